@@ -2,6 +2,7 @@ import UI.ConsoleUI;
 import UI.LoginController;
 import domain.Duck;
 import domain.Persoana;
+import errors.RepoError;
 import javafx.application.Application;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -9,35 +10,104 @@ import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import repo.*;
 import service.NetworkService;
+import service.UserImporter;
 import validator.DuckValidator;
 import validator.PersoanaValidator;
 import validator.ValidationStrategy;
 import UI.Controller;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 /**
  * Application entry point for the social-network-rempill project.
  *
  * This class initializes the repository, validators and service layer,
- * then starts the console user interface. It now supports choosing a Postgres
- * repository via environment variables DB_URL, DB_USER, DB_PASSWORD (or system properties
- * db.url, db.user, db.password). If not all are present, it falls back to in-memory storage.
+ * then starts the JavaFX user interface. Storage is PostgreSQL by default; the system
+ * property storage (or environment variable STORAGE) selects another backend:
+ * memory uses the in-memory repositories, which need no database and start empty;
+ * embedded uses {@link EmbeddedStore}, a local write-ahead log + snapshot store kept in the
+ * directory given by storage.dir (default "data").
+ *
+ * Bulk imports run without the UI: {@code --import-users <file.csv>} or
+ * {@code --import-friendships <file.csv>} load the file into the selected backend with
+ * {@link UserImporter} and print the report (formats are described there).
  */
 public class Main extends Application {
+    private static final String DB_URL = "jdbc:postgresql://localhost:5432/duck_social_network";
+    private static final String DB_USER = "postgres";
+    private static final String DB_PASS = "mihai222";
+
     @Override
     public void start(Stage stage) throws Exception {
-        String dbUrl = "jdbc:postgresql://localhost:5432/duck_social_network";
-        String dbUser = "postgres";
-        String dbPass = "mihai222";
+        String dbUrl = DB_URL;
+        String dbUser = DB_USER;
+        String dbPass = DB_PASS;
+
+        String storage = System.getProperty("storage", System.getenv("STORAGE"));
+        boolean inMemory = "memory".equalsIgnoreCase(storage);
+        boolean embedded = "embedded".equalsIgnoreCase(storage);
 
-        UserRepository userRepository = new PostgresUserRepository(dbUrl, dbUser, dbPass);
-        CardRepository cardRepository = new PostgresCardRepository(dbUrl, dbUser, dbPass, userRepository);
-        EventRepository eventRepository = new PostgresEventRepository(dbUrl, dbUser, dbPass, userRepository);
-        MessageRepository messageRepository = new PostgresMessageRepository(dbUrl, dbUser, dbPass, userRepository);
+        UserRepository userRepository;
+        CardRepository cardRepository;
+        EventRepository eventRepository;
+        MessageRepository messageRepository;
+        NotificationRepository notificationRepository;
+        RaceResultRepository raceResultRepository;
+        if (inMemory) {
+            userRepository = new InMemoryUserRepository();
+            cardRepository = new InMemoryCardRepository(userRepository);
+            eventRepository = new InMemoryEventRepository(userRepository);
+            messageRepository = new InMemoryMessageRepository(userRepository);
+            notificationRepository = new InMemoryNotificationRepository();
+            raceResultRepository = new InMemoryRaceResultRepository();
+        } else if (embedded) {
+            EmbeddedStore store = new EmbeddedStore(Paths.get(System.getProperty("storage.dir", "data")));
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close, "embedded-store-close"));
+            userRepository = store.users();
+            cardRepository = store.cards();
+            eventRepository = store.events();
+            messageRepository = store.messages();
+            notificationRepository = store.notifications();
+            raceResultRepository = store.raceResults();
+        } else {
+            PostgresUserRepository postgresUsers = new PostgresUserRepository(dbUrl, dbUser, dbPass);
+            // partial index behind findTopSwimmers, friend_id index behind the paged friend loads
+            postgresUsers.installSchema();
+            userRepository = new CachingUserRepository(postgresUsers, 10_000);
+            cardRepository = new PostgresCardRepository(dbUrl, dbUser, dbPass, userRepository);
+            eventRepository = new PostgresEventRepository(dbUrl, dbUser, dbPass, userRepository);
+            PostgresMessageRepository postgresMessages = new PostgresMessageRepository(dbUrl, dbUser, dbPass, userRepository);
+            // conversation_reads backs the inbox summary and read marks
+            postgresMessages.installSchema();
+            messageRepository = postgresMessages;
+            PostgresNotificationRepository postgresNotifications = new PostgresNotificationRepository(dbUrl, dbUser, dbPass);
+            postgresNotifications.installSchema();
+            notificationRepository = postgresNotifications;
+            PostgresRaceResultRepository postgresResults = new PostgresRaceResultRepository(dbUrl, dbUser, dbPass);
+            // the leaderboard reads race_results as soon as the service is built
+            postgresResults.installSchema();
+            raceResultRepository = postgresResults;
+        }
 
         ValidationStrategy<Persoana>  persoanaValidator=new PersoanaValidator();
         ValidationStrategy<Duck>  duckValidator=new DuckValidator();
 
-        NetworkService service= new NetworkService(userRepository, eventRepository, persoanaValidator, duckValidator, cardRepository, messageRepository);
+        NetworkService service= new NetworkService(userRepository, eventRepository, persoanaValidator, duckValidator, cardRepository, messageRepository, notificationRepository, raceResultRepository);
+
+        if (!inMemory && !embedded) {
+            // other instances' writes invalidate our caches (triggers from resources/db/change_feed.sql)
+            PostgresChangeListener changeListener = new PostgresChangeListener(dbUrl, dbUser, dbPass);
+            try {
+                changeListener.installTriggers();
+                changeListener.addHandler(service::applyExternalChange);
+                changeListener.start();
+            } catch (RepoError e) {
+                System.out.println("Change feed unavailable, caches will not see other instances' writes: " + e.getMessage());
+            }
+        }
 
         Controller controller = new Controller();
         controller.setService(service);
@@ -49,9 +119,57 @@ public class Main extends Application {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].startsWith("--import-")) {
+            System.exit(runImport(args));
+        }
         launch();
     }
 
+    /**
+     * Run a CSV import against the configured backend.
+     *
+     * @return process exit code
+     */
+    private static int runImport(String[] args) {
+        if (args.length != 2 || !(args[0].equals("--import-users") || args[0].equals("--import-friendships"))) {
+            System.out.println("Usage: --import-users <file.csv> | --import-friendships <file.csv>");
+            return 2;
+        }
+        String storage = System.getProperty("storage", System.getenv("STORAGE"));
+        if ("memory".equalsIgnoreCase(storage)) {
+            System.out.println("Nothing to import into: the in-memory backend starts empty on every run");
+            return 2;
+        }
+        EmbeddedStore store = null;
+        try {
+            BulkUserLoader loader;
+            if ("embedded".equalsIgnoreCase(storage)) {
+                store = new EmbeddedStore(Paths.get(System.getProperty("storage.dir", "data")));
+                loader = new RepositoryBulkLoader(store.users());
+            } else {
+                // the loader matches emails through the lower(email) index
+                new PostgresUserRepository(DB_URL, DB_USER, DB_PASS).installSchema();
+                loader = new PostgresBulkLoader(DB_URL, DB_USER, DB_PASS);
+            }
+            UserImporter importer = new UserImporter(loader, new PersoanaValidator(), new DuckValidator(),
+                    UserImporter.DEFAULT_CHUNK_SIZE);
+            UserImporter.ImportReport report;
+            try (Reader in = Files.newBufferedReader(Paths.get(args[1]))) {
+                report = args[0].equals("--import-users") ? importer.importUsers(in) : importer.importFriendships(in);
+            }
+            for (UserImporter.Reject reject : report.getRejects()) {
+                System.out.println("line " + reject.line() + ": " + reject.reason());
+            }
+            System.out.println(report);
+            return 0;
+        } catch (IOException | RepoError e) {
+            System.out.println("Import failed: " + e.getMessage());
+            return 1;
+        } finally {
+            if (store != null) store.close();
+        }
+    }
+
 //    /**
 //     * Start the application.
 //     *
@@ -2,6 +2,7 @@ package UI;
 
 import domain.*;
 import domain.Message;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -21,14 +22,19 @@ import util.PageResult;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public final class Controller {
     private static final int PAGE_SIZE = 10;
+    private static final int CHAT_PAGE_SIZE = 50;
     private final ObservableList<Duck> ducks = FXCollections.observableArrayList();
     private final ObservableList<Persoana> persons = FXCollections.observableArrayList();
+    private final AtomicBoolean notificationErrorShown = new AtomicBoolean();
 
     private TableView<Duck> duckTable;
     private TableView<Persoana> personTable;
@@ -60,15 +66,33 @@ public final class Controller {
     private TextArea chatMessageField;
     private ComboBox<User> chatFriendCombo;
     private final ObservableList<User> chatPartners = FXCollections.observableArrayList();
+    /** Inbox summary by partner id, loaded with the friends list. */
+    private final Map<Integer, ConversationSummary> chatSummaries = new HashMap<>();
     private boolean suppressChatComboEvents;
+    /** Conversation shown in chatArea and the id range of the messages rendered there. */
+    private User chatPartner;
+    private Integer chatOldestId;
+    private int chatNewestId;
+    private boolean chatHasOlder;
 
     private NetworkService service;
     private int currentPage = 0;
+    /** Keyset cursor each visited page starts after; index 0 is the first page (null cursor). */
+    private final List<Integer> pageCursors = new ArrayList<>(Collections.singletonList(null));
     private TipRata currentFilter = null;
     private User loggedInUser;
 
     public void setService(NetworkService service) {
         this.service = service;
+        // notifications are written in the background; show their failures, one alert at a time
+        service.getNotificationDispatcher().setFailureHandler(e -> {
+            if (notificationErrorShown.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    showError("Notificarile nu au putut fi trimise", e.getMessage());
+                    notificationErrorShown.set(false);
+                });
+            }
+        });
     }
 
     public void setLoggedInUser(User user) {
@@ -123,7 +147,7 @@ public final class Controller {
         typeFilter.setPromptText("Toate tipurile");
         typeFilter.valueProperty().addListener((obs, old, val) -> {
             currentFilter = val;
-            currentPage = 0;
+            resetPaging();
             loadPage();
         });
 
@@ -318,6 +342,12 @@ public final class Controller {
         chatArea = new TextArea();
         chatArea.setEditable(false);
         chatArea.setPrefRowCount(10);
+        // older history is fetched when the user scrolls to the top
+        chatArea.scrollTopProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal.doubleValue() <= 0 && oldVal.doubleValue() > 0) {
+                loadOlderMessages();
+            }
+        });
         chatTargetField = new TextField();
         chatTargetField.setPromptText("email destinatar");
         chatMessageField = new TextArea();
@@ -332,7 +362,7 @@ public final class Controller {
             @Override
             protected void updateItem(User item, boolean empty) {
                 super.updateItem(item, empty);
-                setText(empty || item == null ? null : item.getEmail());
+                setText(empty || item == null ? null : chatPartnerLabel(item));
             }
         });
         chatFriendCombo.setButtonCell(new ListCell<>() {
@@ -388,15 +418,32 @@ public final class Controller {
         return box;
     }
 
+    private void resetPaging() {
+        currentPage = 0;
+        pageCursors.clear();
+        pageCursors.add(null);
+    }
+
     private void loadPage() {
         if (service == null) {
             return;
         }
         try {
-            PageResult<Duck> page = service.getDucksPage(currentPage, PAGE_SIZE, currentFilter);
+            if (currentPage >= pageCursors.size()) {
+                currentPage = pageCursors.size() - 1;
+            }
+            PageResult<Duck> page = service.getDucksPage(currentPage, PAGE_SIZE, currentFilter, pageCursors.get(currentPage));
+            if (page.getItems().isEmpty() && currentPage > 0) {
+                // page emptied by deletions: restart from the beginning rather than show a blank table
+                resetPaging();
+                page = service.getDucksPage(0, PAGE_SIZE, currentFilter, null);
+            }
             ducks.setAll(page.getItems());
-            int totalPages = Math.max(page.getTotalPages(), 1);
-            currentPage = Math.min(currentPage, totalPages - 1);
+            pageCursors.subList(currentPage + 1, pageCursors.size()).clear();
+            if (page.getNextCursor() != null) {
+                pageCursors.add(page.getNextCursor());
+            }
+            int totalPages = Math.max(page.getTotalPages(), currentPage + (page.hasNext() ? 2 : 1));
             pageInfoLabel.setText(String.format("Pagina %d / %d (total %d)", currentPage + 1, totalPages, page.getTotalItems()));
             prevPageButton.setDisable(!page.hasPrevious());
             nextPageButton.setDisable(!page.hasNext());
@@ -506,21 +553,31 @@ public final class Controller {
     private void refreshFriends() {
         if (service == null || loggedInUser == null) {
             friendsTable.getItems().clear();
-            chatArea.clear();
+            loadConversation(null);
             chatTargetField.clear();
             chatPartners.clear();
             return;
         }
         suppressChatComboEvents = true;
         friendsTable.getItems().setAll(service.getFriendsFor(loggedInUser.getId()));
-        chatPartners.setAll(friendsTable.getItems());
+        // partners with a conversation first (newest first), then friends never written to
+        chatSummaries.clear();
+        List<User> partners = new ArrayList<>();
+        for (ConversationSummary summary : service.getInboxSummary(loggedInUser.getId())) {
+            chatSummaries.put(summary.getPartner().getId(), summary);
+            partners.add(summary.getPartner());
+        }
+        for (User friend : friendsTable.getItems()) {
+            if (!chatSummaries.containsKey(friend.getId())) partners.add(friend);
+        }
+        chatPartners.setAll(partners);
         if (!friendsTable.getItems().isEmpty()) {
             User first = friendsTable.getItems().get(0);
             friendsTable.getSelectionModel().select(first);
             chatFriendCombo.getSelectionModel().select(first);
             loadConversation(first);
         } else {
-            chatArea.clear();
+            loadConversation(null);
             chatTargetField.clear();
             chatFriendCombo.getSelectionModel().clearSelection();
         }
@@ -547,24 +604,87 @@ public final class Controller {
             suppressChatComboEvents = false;
             chatTargetField.setText(recipient.getEmail());
             chatMessageField.clear();
-            loadConversation(recipient);
+            if (chatPartner != null && chatPartner.getId() == recipient.getId()) {
+                appendNewMessages();
+            } else {
+                loadConversation(recipient);
+            }
             showInfo("Trimis", "Mesaj trimis");
         } catch (Exception ex) {
             showError("Nu am putut trimite", ex.getMessage());
         }
     }
 
+    /**
+     * Show the latest page of a conversation; older pages are loaded on scroll, newer messages
+     * are appended by {@link #appendNewMessages()}.
+     */
     private void loadConversation(User other) {
+        chatPartner = other;
+        chatOldestId = null;
+        chatNewestId = 0;
+        chatHasOlder = false;
         if (service == null || loggedInUser == null || other == null) {
             chatArea.clear();
             return;
         }
-        StringBuilder conversation = new StringBuilder();
-        service.getConversation(loggedInUser.getId(), other.getId()).forEach(msg -> {
+        List<Message> messages = service.getConversationBefore(loggedInUser.getId(), other.getId(), null, CHAT_PAGE_SIZE);
+        chatHasOlder = messages.size() == CHAT_PAGE_SIZE;
+        if (!messages.isEmpty()) {
+            chatOldestId = messages.get(0).getId();
+            chatNewestId = messages.get(messages.size() - 1).getId();
+        }
+        chatArea.setText(formatMessages(messages));
+        chatArea.setScrollTop(Double.MAX_VALUE);
+        ConversationSummary summary = chatSummaries.get(other.getId());
+        if (summary != null && summary.getUnread() > 0 && !messages.isEmpty()) {
+            service.markConversationRead(loggedInUser.getId(), other.getId(), chatNewestId);
+            chatSummaries.put(other.getId(), new ConversationSummary(other, summary.getLastMessageId(),
+                    summary.getLastSenderId(), summary.getLastMessage(), summary.getLastAt(), 0));
+        }
+    }
+
+    private void appendNewMessages() {
+        if (chatPartner == null) {
+            return;
+        }
+        List<Message> messages = service.getConversationSince(loggedInUser.getId(), chatPartner.getId(), chatNewestId);
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (chatOldestId == null) {
+            chatOldestId = messages.get(0).getId();
+        }
+        chatNewestId = messages.get(messages.size() - 1).getId();
+        chatArea.appendText(formatMessages(messages));
+    }
+
+    private void loadOlderMessages() {
+        if (chatPartner == null || !chatHasOlder || service == null || loggedInUser == null) {
+            return;
+        }
+        List<Message> messages = service.getConversationBefore(loggedInUser.getId(), chatPartner.getId(), chatOldestId, CHAT_PAGE_SIZE);
+        chatHasOlder = messages.size() == CHAT_PAGE_SIZE;
+        if (!messages.isEmpty()) {
+            chatOldestId = messages.get(0).getId();
+            chatArea.insertText(0, formatMessages(messages));
+        }
+    }
+
+    private String formatMessages(List<Message> messages) {
+        StringBuilder text = new StringBuilder();
+        for (Message msg : messages) {
             String author = msg.getFrom().getId() == loggedInUser.getId() ? "Tu" : msg.getFrom().getUsername();
-            conversation.append(author).append(": ").append(msg.getMessage()).append("\n");
-        });
-        chatArea.setText(conversation.toString());
+            text.append(author).append(": ").append(msg.getMessage()).append("\n");
+        }
+        return text.toString();
+    }
+
+    private String chatPartnerLabel(User partner) {
+        ConversationSummary summary = chatSummaries.get(partner.getId());
+        if (summary == null) return partner.getEmail();
+        String label = partner.getEmail() + " - " + summary.getLastMessage();
+        return summary.getUnread() > 0 ? label + " (" + summary.getUnread() + " necitite)" : label;
     }
 
     private void updateCommunityCount() {
@@ -0,0 +1,56 @@
+package domain;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of a user's chat inbox: a conversation partner, the latest message exchanged with
+ * them (in either direction) and how many of the partner's messages are still unread.
+ */
+public class ConversationSummary {
+    private final User partner;
+    private final int lastMessageId;
+    private final int lastSenderId;
+    private final String lastMessage;
+    private final LocalDateTime lastAt;
+    private final int unread;
+
+    public ConversationSummary(User partner, int lastMessageId, int lastSenderId, String lastMessage,
+                               LocalDateTime lastAt, int unread) {
+        if (partner == null) throw new IllegalArgumentException("partner missing");
+        this.partner = partner;
+        this.lastMessageId = lastMessageId;
+        this.lastSenderId = lastSenderId;
+        this.lastMessage = lastMessage;
+        this.lastAt = lastAt;
+        this.unread = unread;
+    }
+
+    public User getPartner() {
+        return partner;
+    }
+
+    public int getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public int getLastSenderId() {
+        return lastSenderId;
+    }
+
+    public String getLastMessage() {
+        return lastMessage;
+    }
+
+    public LocalDateTime getLastAt() {
+        return lastAt;
+    }
+
+    public int getUnread() {
+        return unread;
+    }
+
+    @Override
+    public String toString() {
+        return partner.getUsername() + ": " + lastMessage + (unread > 0 ? " (" + unread + ")" : "");
+    }
+}
@@ -0,0 +1,50 @@
+package domain;
+
+/**
+ * A duck's position on the race leaderboard. Ducks are ranked by best time (lower is better),
+ * ties by id; rank 1 is the leader.
+ */
+public class DuckStanding {
+    private final int duckId;
+    private final int rank;
+    private final double bestTime;
+    private final int racesRun;
+    private final double averageTime;
+
+    public DuckStanding(int duckId, int rank, double bestTime, int racesRun, double averageTime) {
+        this.duckId = duckId;
+        this.rank = rank;
+        this.bestTime = bestTime;
+        this.racesRun = racesRun;
+        this.averageTime = averageTime;
+    }
+
+    public int getDuckId() {
+        return duckId;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public double getBestTime() {
+        return bestTime;
+    }
+
+    public int getRacesRun() {
+        return racesRun;
+    }
+
+    /**
+     * @return exponential moving average of the duck's race times, so recent races weigh more
+     *         (see service.LeaderboardService)
+     */
+    public double getAverageTime() {
+        return averageTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d duck %d: best %.3f s, %d races, avg %.3f s", rank, duckId, bestTime, racesRun, averageTime);
+    }
+}
@@ -14,6 +14,7 @@ public class Event {
     private final String name;
     private final List<User> subscribers = new ArrayList<>();
     private final List<String> notificationLog = new ArrayList<>();
+    private NotificationListener notificationListener;
 
     /**
      * Construct a new event with id and name.
@@ -86,15 +87,28 @@ public class Event {
         subscribers.remove(user);
     }
 
+    /**
+     * Hand notification delivery to a listener (e.g. an asynchronous dispatcher) instead of
+     * delivering to each subscriber inline. Pass null to restore inline delivery.
+     */
+    public void setNotificationListener(NotificationListener listener) {
+        this.notificationListener = listener;
+    }
+
     /**
      * Notify all subscribers with a message and append it to the local notification log.
-     * Implemented as simple console output per subscriber for demo purposes.
+     * Without a {@link NotificationListener} this is simple console output per subscriber
+     * for demo purposes.
      *
      * @param message message to broadcast
      */
     protected void notifySubscribers(String message) {
         String full = "[Event " + id + ":" + name + "] " + message;
         notificationLog.add(full);
+        if (notificationListener != null) {
+            notificationListener.onNotification(this, List.copyOf(subscribers), full);
+            return;
+        }
         for (User u : subscribers) {
             // push notification into user's inbox
             u.receiveNotification(full);
@@ -4,9 +4,12 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.IntFunction;
 
 /**
  * Represents a message exchanged between users. Supports multi-recipient and replies.
+ * The message replied to may be given directly or only by id; in the latter case it is loaded
+ * on the first {@link #getReplyTo()} call, so loading a message never loads its reply chain.
  */
 public class Message {
     private final int id;
@@ -14,13 +17,31 @@ public class Message {
     private final List<User> to;
     private final String message;
     private final LocalDateTime createdAt;
-    private final Message replyTo;
+    private final Integer replyToId;
+    private final IntFunction<Message> replyLoader;
+    private Message replyTo;
 
     public Message(int id, User from, List<User> to, String message, LocalDateTime createdAt) {
         this(id, from, to, message, createdAt, null);
     }
 
     public Message(int id, User from, List<User> to, String message, LocalDateTime createdAt, Message replyTo) {
+        this(id, from, to, message, createdAt, replyTo, replyTo != null ? replyTo.getId() : null, null);
+    }
+
+    /**
+     * Message whose reply target is resolved lazily.
+     *
+     * @param replyToId   id of the message replied to, or null
+     * @param replyLoader loads a message by id on the first {@link #getReplyTo()} call
+     */
+    public Message(int id, User from, List<User> to, String message, LocalDateTime createdAt,
+                   Integer replyToId, IntFunction<Message> replyLoader) {
+        this(id, from, to, message, createdAt, null, replyToId, replyLoader);
+    }
+
+    private Message(int id, User from, List<User> to, String message, LocalDateTime createdAt,
+                    Message replyTo, Integer replyToId, IntFunction<Message> replyLoader) {
         if (from == null) throw new IllegalArgumentException("sender missing");
         if (to == null || to.isEmpty()) throw new IllegalArgumentException("recipients missing");
         if (message == null || message.isBlank()) throw new IllegalArgumentException("text missing");
@@ -30,6 +51,16 @@ public class Message {
         this.message = message;
         this.createdAt = createdAt != null ? createdAt : LocalDateTime.now();
         this.replyTo = replyTo;
+        this.replyToId = replyToId;
+        this.replyLoader = replyLoader;
+    }
+
+    /**
+     * @return the same message under another id (e.g. the one generated on save); an unresolved
+     *         reply target stays unresolved
+     */
+    public Message withId(int newId) {
+        return new Message(newId, from, to, message, createdAt, replyTo, replyToId, replyLoader);
     }
 
     public int getId() {
@@ -52,7 +83,20 @@ public class Message {
         return createdAt;
     }
 
+    /**
+     * @return id of the message replied to, or null; never loads anything
+     */
+    public Integer getReplyToId() {
+        return replyToId;
+    }
+
+    /**
+     * @return the message replied to, loading it on first use if only its id is known
+     */
     public Message getReplyTo() {
+        if (replyTo == null && replyToId != null && replyLoader != null) {
+            replyTo = replyLoader.apply(replyToId);
+        }
         return replyTo;
     }
 }
@@ -0,0 +1,43 @@
+package domain;
+
+import java.time.LocalDateTime;
+
+/**
+ * One item of a user's notification inbox, as broadcast by an {@link Event}.
+ * Ids increase with delivery order, which is what inbox paging relies on.
+ */
+public class Notification {
+    private final int id;
+    private final int eventId;
+    private final String message;
+    private final LocalDateTime createdAt;
+
+    public Notification(int id, int eventId, String message, LocalDateTime createdAt) {
+        if (message == null) throw new IllegalArgumentException("message missing");
+        this.id = id;
+        this.eventId = eventId;
+        this.message = message;
+        this.createdAt = createdAt != null ? createdAt : LocalDateTime.now();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getEventId() {
+        return eventId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,17 @@
+package domain;
+
+import java.util.List;
+
+/**
+ * Takes over delivery of the notifications an {@link Event} broadcasts, so the event does not
+ * loop over its subscribers on the caller's thread.
+ */
+@FunctionalInterface
+public interface NotificationListener {
+    /**
+     * @param event       the broadcasting event
+     * @param subscribers snapshot of the subscribers at broadcast time
+     * @param message     full notification text, as appended to the event's log
+     */
+    void onNotification(Event event, List<User> subscribers, String message);
+}
@@ -1,7 +1,7 @@
 package domain;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -12,7 +12,9 @@ import java.util.stream.Collectors;
 public class RaceEvent extends Event {
     private final int lanes; // M
     private final List<Duck> participants = new ArrayList<>();
+    private final List<RaceResult> results = new ArrayList<>();
     private double[] distances; // per-lane distances
+    private util.OptimizationStrategy optimizer = new util.SortMatchSwimOptimizer();
 
     /**
      * Construct a race event with the specified number of lanes (M). Distances default to 1.0.
@@ -39,6 +41,11 @@ public class RaceEvent extends Event {
      */
     public List<Duck> getParticipants() { return participants; }
 
+    /**
+     * @return per-lane results of the last {@link #runRaceAndReport()} (empty before the first run)
+     */
+    public List<RaceResult> getResults() { return Collections.unmodifiableList(results); }
+
     /**
      * @return defensive copy of the configured lane distances
      */
@@ -57,39 +64,60 @@ public class RaceEvent extends Event {
         this.distances = distances;
     }
 
+    /**
+     * Choose the lane assignment strategy used by {@link #runRaceAndReport()}. Defaults to the
+     * exact {@link util.SortMatchSwimOptimizer}; {@link util.BinarySearchSwimOptimizer} can be set
+     * to compare results.
+     *
+     * @param optimizer strategy to use (not null)
+     */
+    public void setOptimizationStrategy(util.OptimizationStrategy optimizer) {
+        if (optimizer == null) throw new IllegalArgumentException("optimizer missing");
+        this.optimizer = optimizer;
+    }
+
     /**
      * Select up to M participant ducks from the provided list, filtering to swimmers (Inotator)
-     * and sorting by speed desc, then endurance desc.
+     * and ranking by speed desc, then endurance desc. Only the M best are ordered
+     * ({@link util.TopKSelector}), so the cost is O(N log M) instead of a full sort.
      *
      * @param allDucks candidate ducks (may contain non-swimmers)
      */
     public void selectParticipants(List<Duck> allDucks){
         participants.clear();
         if(allDucks == null) return;
-        List<Duck> swimmers = allDucks.stream()
-                .filter(d -> d instanceof Inotator)
-                .sorted(Comparator.comparingDouble(Duck::getViteza).reversed()
-                        .thenComparing(Comparator.comparingDouble(Duck::getRezistenta).reversed()))
-                .limit(lanes)
-                .collect(Collectors.toList());
-        participants.addAll(swimmers);
+        List<Duck> swimmers = new ArrayList<>(allDucks.size());
+        for (Duck d : allDucks) {
+            if (d instanceof Inotator) swimmers.add(d);
+        }
+        int n = swimmers.size();
+        double[] speed = new double[n];
+        double[] endurance = new double[n];
+        for (int i = 0; i < n; i++) {
+            speed[i] = swimmers.get(i).getViteza();
+            endurance[i] = swimmers.get(i).getRezistenta();
+        }
+        for (int i : util.TopKSelector.select(speed, endurance, n, lanes)) {
+            participants.add(swimmers.get(i));
+        }
         notifySubscribers("Race participants selected: " + participants.stream().map(Duck::getUsername).collect(Collectors.joining(", ")));
     }
 
     /**
      * Run the race using the current participants and configured distances and return a textual
      * report per lane (one line per lane assigned) plus a final line with the minimal total time.
+     * The lane results are also kept for {@link #getResults()}.
      *
      * @return list of report lines describing per-lane assignments and minimal total time
      */
     public List<String> runRaceAndReport(){
         List<String> report = new ArrayList<>();
+        results.clear();
         if(participants.isEmpty()){
             report.add("No participants selected.");
             return report;
         }
-        util.OptimizationStrategy opt = new util.BinarySearchSwimOptimizer();
-        util.SolveResult result = opt.computeMinTime(participants.toArray(new Duck[0]), distances);
+        util.SolveResult result = optimizer.computeMinTime(participants.toArray(new Duck[0]), distances);
         Duck[] assignment = result.getAssignments();
         double minimalTime = result.getMinimalTime();
 
@@ -98,6 +126,7 @@ public class RaceEvent extends Event {
             if (d == null) continue;
             int lane = i + 1;
             double t = (2.0 * distances[i]) / d.getViteza();
+            results.add(new RaceResult(getId(), lane, d.getId(), t));
             report.add(String.format("Duck %d on lane %d: t = %.3f s", d.getId(), lane, t));
         }
         report.add(String.format("Minimal total time: %.3f s", minimalTime));
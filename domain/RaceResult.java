@@ -0,0 +1,70 @@
+package domain;
+
+/**
+ * One lane of a finished race: which duck swam it and its round-trip time. Heats of a
+ * tournament also carry their round and heat number; a plain race has round and heat 0.
+ */
+public class RaceResult {
+    private final int raceId;
+    private final int lane;
+    private final int duckId;
+    private final double time;
+    private final int round;
+    private final int heat;
+
+    /**
+     * @param raceId race event id
+     * @param lane   lane number, starting at 1
+     * @param duckId id of the duck assigned to the lane
+     * @param time   round-trip time in seconds (2 * distance / speed)
+     */
+    public RaceResult(int raceId, int lane, int duckId, double time) {
+        this(raceId, lane, duckId, time, 0, 0);
+    }
+
+    /**
+     * @param round tournament round, starting at 1 (0 outside tournaments)
+     * @param heat  heat within the round, starting at 1 (0 outside tournaments)
+     */
+    public RaceResult(int raceId, int lane, int duckId, double time, int round, int heat) {
+        if (lane <= 0) throw new IllegalArgumentException("lane must be > 0");
+        if (!(time >= 0)) throw new IllegalArgumentException("time must be >= 0");
+        if (round < 0 || heat < 0) throw new IllegalArgumentException("round and heat must be >= 0");
+        this.raceId = raceId;
+        this.lane = lane;
+        this.duckId = duckId;
+        this.time = time;
+        this.round = round;
+        this.heat = heat;
+    }
+
+    public int getRaceId() {
+        return raceId;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    public int getDuckId() {
+        return duckId;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getHeat() {
+        return heat;
+    }
+
+    @Override
+    public String toString() {
+        String where = round == 0 ? "" : String.format("Round %d, heat %d: ", round, heat);
+        return where + String.format("Duck %d on lane %d: t = %.3f s", duckId, lane, time);
+    }
+}
@@ -0,0 +1,26 @@
+package repo;
+
+import domain.User;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk insertion of already validated users and friendships, used by imports instead of
+ * one {@link UserRepository#save} per row.
+ */
+public interface BulkUserLoader {
+    /**
+     * Insert a batch of users (passwords already hashed). Inserted users get their id set.
+     *
+     * @return rejected rows keyed by their index in the batch, with the reason
+     */
+    Map<Integer, String> loadUsers(List<User> users);
+
+    /**
+     * Insert a batch of friendships given as pairs of emails; existing friendships are kept.
+     *
+     * @return rejected pairs keyed by their index in the batch, with the reason
+     */
+    Map<Integer, String> loadFriendships(List<String[]> emailPairs);
+}
@@ -0,0 +1,272 @@
+package repo;
+
+import domain.Duck;
+import domain.TipRata;
+import domain.User;
+import errors.RepoError;
+import util.PageResult;
+import util.TinyLfuCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read-through caching decorator for any {@link UserRepository}.
+ *
+ * Point lookups (findOne, findByEmail, findByIds) go through a map bounded by a
+ * {@link TinyLfuCache}, so repeated lookups of a hot user need no round trip. The cache keeps
+ * its own copy of each user and hands out copies, so callers may mutate what they get without
+ * affecting other callers. Graph and page queries (findAll, pages, findWithFriends) always reach
+ * the delegate because they return fresh objects with friend lists attached.
+ *
+ * Every write invalidates the affected ids before returning, and so can other threads through
+ * {@link #invalidate(int)} (e.g. a change listener). Invalidations bump an epoch; a load that
+ * overlaps one is returned but not cached, since it may have read the row before the change.
+ */
+public class CachingUserRepository implements UserRepository {
+    private final UserRepository delegate;
+    private final TinyLfuCache<Integer, User> cache;
+    private final TinyLfuCache<String, Integer> emailIndex;
+    /** Number of invalidations so far; guarded by this. */
+    private long epoch;
+
+    /**
+     * @param delegate repository that owns the data (e.g. {@link PostgresUserRepository})
+     * @param capacity maximum number of cached users
+     */
+    public CachingUserRepository(UserRepository delegate, int capacity) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.cache = new TinyLfuCache<>(capacity);
+        this.emailIndex = new TinyLfuCache<>(capacity);
+    }
+
+    @Override
+    public User findOne(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        User cached = cache.get(id);
+        if (cached != null) return copy(cached);
+        long seen = epoch();
+        return remember(delegate.findOne(id), seen);
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        if (email == null) return null;
+        String key = email.toLowerCase();
+        Integer id = emailIndex.get(key);
+        if (id != null) {
+            User cached = cache.get(id);
+            if (cached != null && key.equals(cached.getEmail())) return copy(cached);
+            emailIndex.invalidate(key);
+        }
+        long seen = epoch();
+        return remember(delegate.findByEmail(key), seen);
+    }
+
+    @Override
+    public Map<Integer, User> findByIds(Collection<Integer> ids) {
+        Map<Integer, User> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) return result;
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || result.containsKey(id)) continue;
+            User cached = cache.get(id);
+            if (cached != null) {
+                result.put(id, copy(cached));
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long seen = epoch();
+            for (User u : delegate.findByIds(missing).values()) {
+                result.put(u.getId(), remember(u, seen));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return delegate.emailExists(email);
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Iterable<Duck> findAllDucks() {
+        return delegate.findAllDucks();
+    }
+
+    @Override
+    public List<Duck> findTopSwimmers(int limit) {
+        return delegate.findTopSwimmers(limit);
+    }
+
+    @Override
+    public PageResult<User> findPage(int pageIndex, int pageSize) {
+        return delegate.findPage(pageIndex, pageSize);
+    }
+
+    @Override
+    public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter) {
+        return delegate.findDuckPage(pageIndex, pageSize, filter);
+    }
+
+    @Override
+    public PageResult<User> findPage(int pageIndex, int pageSize, Integer afterId) {
+        return delegate.findPage(pageIndex, pageSize, afterId);
+    }
+
+    @Override
+    public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter, Integer afterId) {
+        return delegate.findDuckPage(pageIndex, pageSize, filter, afterId);
+    }
+
+    @Override
+    public User findWithFriends(int id) {
+        return delegate.findWithFriends(id);
+    }
+
+    @Override
+    public PageResult<User> findPageWithFriends(int pageIndex, int pageSize, Integer afterId) {
+        return delegate.findPageWithFriends(pageIndex, pageSize, afterId);
+    }
+
+    @Override
+    public User save(User entity) throws RepoError {
+        try {
+            return delegate.save(entity);
+        } finally {
+            if (entity != null) {
+                invalidate(entity.getId());
+                if (entity.getEmail() != null) emailIndex.invalidate(entity.getEmail());
+            }
+        }
+    }
+
+    @Override
+    public User delete(Integer id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            if (id != null) invalidate(id);
+        }
+    }
+
+    @Override
+    public void updatePassword(int userId, String hashedPassword) {
+        try {
+            delegate.updatePassword(userId, hashedPassword);
+        } finally {
+            invalidate(userId);
+        }
+    }
+
+    @Override
+    public void saveFriendship(int id1, int id2) {
+        try {
+            delegate.saveFriendship(id1, id2);
+        } finally {
+            // cached instances may carry friend lists mutated by callers
+            invalidate(id1);
+            invalidate(id2);
+        }
+    }
+
+    @Override
+    public void deleteFriendship(int id1, int id2) {
+        try {
+            delegate.deleteFriendship(id1, id2);
+        } finally {
+            invalidate(id1);
+            invalidate(id2);
+        }
+    }
+
+    @Override
+    public void saveFriendships(Collection<int[]> pairs) {
+        try {
+            delegate.saveFriendships(pairs);
+        } finally {
+            invalidatePairs(pairs);
+        }
+    }
+
+    @Override
+    public void deleteFriendships(Collection<int[]> pairs) {
+        try {
+            delegate.deleteFriendships(pairs);
+        } finally {
+            invalidatePairs(pairs);
+        }
+    }
+
+    private void invalidatePairs(Collection<int[]> pairs) {
+        for (int[] pair : pairs) {
+            invalidate(pair[0]);
+            invalidate(pair[1]);
+        }
+    }
+
+    /**
+     * Drop a single user from the cache, e.g. after a write made elsewhere.
+     */
+    public synchronized void invalidate(int id) {
+        epoch++;
+        User removed = cache.invalidate(id);
+        if (removed != null && removed.getEmail() != null) {
+            emailIndex.invalidate(removed.getEmail());
+        }
+    }
+
+    /**
+     * Drop every cached user.
+     */
+    public synchronized void invalidateAll() {
+        epoch++;
+        cache.invalidateAll();
+        emailIndex.invalidateAll();
+    }
+
+    /** @return fraction of point lookups served from the cache */
+    public double getHitRatio() { return cache.getHitRatio(); }
+
+    public long getHitCount() { return cache.getHitCount(); }
+
+    public long getMissCount() { return cache.getMissCount(); }
+
+    public long getEvictionCount() { return cache.getEvictionCount(); }
+
+    public int getCachedCount() { return cache.size(); }
+
+    private synchronized long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Cache a copy of a freshly loaded user, unless an invalidation ran since the load began.
+     *
+     * @param seen epoch read before the delegate was queried
+     * @return the loaded user itself, for the caller
+     */
+    private synchronized User remember(User user, long seen) {
+        if (user == null || seen != epoch) return user;
+        cache.put(user.getId(), copy(user));
+        if (user.getEmail() != null) emailIndex.put(user.getEmail(), user.getId());
+        return user;
+    }
+
+    private static User copy(User user) {
+        User c = InMemoryUserRepository.copyOf(user);
+        c.getFriends().addAll(user.getFriends());
+        return c;
+    }
+}
@@ -0,0 +1,488 @@
+package repo;
+
+import domain.*;
+import errors.RepoError;
+import util.PageResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Embedded persistence backend for deployments without PostgreSQL.
+ *
+ * The live state is held by the in-memory repositories, so reads never leave the process.
+ * Every mutation is applied there and appended to a {@link WriteAheadLog} ({@code wal.log})
+ * before the call returns; the log is fsync'ed with group commit, so concurrent writers share
+ * one sync. When the log grows past a threshold the whole state is written as a compacted
+ * snapshot ({@code snapshot.dat}) and the log is emptied. On open, the snapshot is loaded and
+ * the log tail after the snapshot's lsn is replayed.
+ *
+ * Mutations are applied and appended under one lock so the log order is the apply order;
+ * waiting for the fsync happens outside of it. The in-memory repositories are the only place
+ * that validates a mutation and assigns its ids, so a mutation is applied before its record is
+ * written. If encoding, appending or syncing the record fails, the caller gets the error and
+ * the in-memory state is reloaded from the snapshot and the log, so memory never holds changes
+ * that would be gone after a restart. A failed log stays failed: later writes are rejected
+ * before they touch memory.
+ */
+public class EmbeddedStore implements AutoCloseable {
+    public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+    private static final int SNAPSHOT_RESULTS_PER_RECORD = 1_024;
+
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final long checkpointBytes;
+    private volatile LogRecords.Targets state;
+    private final WriteAheadLog log;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final UserRepository users;
+    private final CardRepository cards;
+    private final EventRepository events;
+    private final MessageRepository messages;
+    private final NotificationRepository notifications;
+    private final RaceResultRepository raceResults;
+
+    public EmbeddedStore(Path directory) {
+        this(directory, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Open the store in the given directory, creating it if needed, and recover its state.
+     *
+     * @param checkpointBytes log size after which a snapshot is written
+     */
+    public EmbeddedStore(Path directory, long checkpointBytes) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RepoError("DB open error: " + e.getMessage());
+        }
+        this.snapshotPath = directory.resolve("snapshot.dat");
+        this.logPath = directory.resolve("wal.log");
+        this.checkpointBytes = checkpointBytes;
+        LogRecords.Targets recovered = emptyState();
+        long lastLsn = recover(recovered);
+        this.state = recovered;
+        this.log = new WriteAheadLog(logPath, Math.max(0, lastLsn));
+
+        this.users = new LoggedUserRepository();
+        this.cards = new LoggedCardRepository();
+        this.events = new LoggedEventRepository();
+        this.messages = new LoggedMessageRepository();
+        this.notifications = new LoggedNotificationRepository();
+        this.raceResults = new LoggedRaceResultRepository();
+    }
+
+    public UserRepository users() { return users; }
+
+    public CardRepository cards() { return cards; }
+
+    public EventRepository events() { return events; }
+
+    public MessageRepository messages() { return messages; }
+
+    public NotificationRepository notifications() { return notifications; }
+
+    public RaceResultRepository raceResults() { return raceResults; }
+
+    /**
+     * Write a snapshot of the current state and empty the log. Writers are blocked meanwhile.
+     */
+    public void checkpoint() {
+        writeLock.lock();
+        try {
+            try (WriteAheadLog.SnapshotWriter out = WriteAheadLog.snapshotWriter(snapshotPath, log.lastLsn())) {
+                writeSnapshot(out);
+                out.commit();
+            }
+            log.reset();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        checkpoint();
+        log.close();
+    }
+
+    private static LogRecords.Targets emptyState() {
+        InMemoryUserRepository userState = new InMemoryUserRepository();
+        return new LogRecords.Targets(userState, new InMemoryCardRepository(userState),
+                new InMemoryEventRepository(userState), new InMemoryMessageRepository(userState),
+                new InMemoryNotificationRepository(), new InMemoryRaceResultRepository());
+    }
+
+    /**
+     * Load the snapshot and replay the log tail after it into the given repositories.
+     *
+     * @return highest lsn found
+     */
+    private long recover(LogRecords.Targets into) {
+        WriteAheadLog.RecordHandler handler = (lsn, payload) -> {
+            try {
+                LogRecords.apply(payload, into);
+            } catch (RepoError e) {
+                throw new RepoError("DB log replay error at lsn " + lsn + ": " + e.getMessage());
+            }
+        };
+        long snapshotLsn = WriteAheadLog.replay(snapshotPath, -1, false, handler);
+        return WriteAheadLog.replay(logPath, snapshotLsn, true, handler);
+    }
+
+    /**
+     * Replace the in-memory state with what the snapshot and log hold, dropping mutations whose
+     * records never made it into the log. Caller holds the write lock.
+     */
+    private void rollBack() {
+        LogRecords.Targets recovered = emptyState();
+        recover(recovered);
+        state = recovered;
+    }
+
+    private void writeSnapshot(WriteAheadLog.SnapshotWriter out) {
+        // always at least one record, so an empty snapshot still carries its lsn; the mark also
+        // holds the id counters
+        LogRecords.Targets state = this.state;
+        out.append(LogRecords.snapshotMark(state));
+        Iterable<User> allUsers = state.users().findAll();
+        for (User u : allUsers) {
+            out.append(LogRecords.userPut(u));
+        }
+        for (User u : allUsers) {
+            for (User friend : u.getFriends()) {
+                if (u.getId() < friend.getId()) {
+                    out.append(LogRecords.ids(LogRecords.FRIEND_ADD, u.getId(), friend.getId()));
+                }
+            }
+        }
+        for (Card card : state.cards().findAll()) {
+            out.append(LogRecords.cardPut(card.getId(), card.getNumeCard()));
+            for (Duck duck : card.getMembri()) {
+                out.append(LogRecords.ids(LogRecords.CARD_ADD_DUCK, card.getId(), duck.getId()));
+            }
+        }
+        for (Event event : state.events().findAll()) {
+            out.append(LogRecords.eventPut(event));
+            for (User subscriber : event.getSubscribers()) {
+                out.append(LogRecords.ids(LogRecords.EVENT_SUBSCRIBE, event.getId(), subscriber.getId()));
+            }
+            for (String message : event.getNotificationLog()) {
+                out.append(LogRecords.notification(event.getId(), message));
+            }
+        }
+        for (MessageRows.Row row : state.messages().rows()) {
+            out.append(LogRecords.messagePut(row));
+        }
+        for (int[] mark : state.messages().conversationReads()) {
+            out.append(LogRecords.ids(LogRecords.CONVERSATION_READ, mark));
+        }
+        for (InMemoryNotificationRepository.Entry e : state.notifications().entries()) {
+            out.append(LogRecords.notificationPut(e.notification(), e.recipientIds()));
+        }
+        for (Map.Entry<Integer, Integer> mark : state.notifications().readMarks().entrySet()) {
+            out.append(LogRecords.ids(LogRecords.INBOX_READ, mark.getKey(), mark.getValue()));
+        }
+        List<RaceResult> chunk = new ArrayList<>(SNAPSHOT_RESULTS_PER_RECORD);
+        state.raceResults().forEach(r -> {
+            chunk.add(r);
+            if (chunk.size() == SNAPSHOT_RESULTS_PER_RECORD) {
+                out.append(LogRecords.raceResults(chunk));
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) out.append(LogRecords.raceResults(chunk));
+    }
+
+    /**
+     * Apply a mutation and log the record describing its result (null: nothing changed),
+     * then wait until the record is durable.
+     */
+    private <T> T write(Supplier<T> mutation, Function<T, byte[]> record) {
+        return writeBatch(mutation, result -> {
+            byte[] payload = record.apply(result);
+            return payload == null ? List.of() : List.of(payload);
+        });
+    }
+
+    /**
+     * Like {@link #write(Supplier, Function)} for mutations described by several records.
+     * Records of a batch are not atomic: if the log fails halfway, the records written so far
+     * stay (in the log and, after the rollback, in memory).
+     */
+    private <T> T writeBatch(Supplier<T> mutation, Function<T, List<byte[]>> records) {
+        long lsn;
+        T result;
+        writeLock.lock();
+        try {
+            log.ensureWritable();
+            result = mutation.get();
+            try {
+                List<byte[]> payloads = records.apply(result);
+                if (payloads.isEmpty()) return result;
+                lsn = log.lastLsn();
+                for (byte[] payload : payloads) {
+                    lsn = log.append(payload);
+                }
+            } catch (RepoError e) {
+                rollBack();
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            log.awaitDurable(lsn);
+        } catch (RepoError e) {
+            writeLock.lock();
+            try {
+                rollBack();
+            } finally {
+                writeLock.unlock();
+            }
+            throw e;
+        }
+        maybeCheckpoint();
+        return result;
+    }
+
+    private void write(Runnable mutation, byte[] record) {
+        write(mutation, List.of(record));
+    }
+
+    private void write(Runnable mutation, List<byte[]> records) {
+        writeBatch(() -> {
+            mutation.run();
+            return null;
+        }, ignored -> records);
+    }
+
+    private void maybeCheckpoint() {
+        if (log.size() > checkpointBytes && writeLock.tryLock()) {
+            // whoever gets the lock first compacts; the others keep going
+            try {
+                if (log.size() > checkpointBytes) checkpoint();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private class LoggedUserRepository implements UserRepository {
+        private InMemoryUserRepository s() { return state.users(); }
+
+        @Override public User findOne(Integer id) { return s().findOne(id); }
+        @Override public Iterable<User> findAll() { return s().findAll(); }
+        @Override public Iterable<Duck> findAllDucks() { return s().findAllDucks(); }
+        @Override public List<Duck> findTopSwimmers(int limit) { return s().findTopSwimmers(limit); }
+        @Override public PageResult<User> findPage(int pageIndex, int pageSize) { return s().findPage(pageIndex, pageSize); }
+        @Override public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter) { return s().findDuckPage(pageIndex, pageSize, filter); }
+        @Override public PageResult<User> findPage(int pageIndex, int pageSize, Integer afterId) { return s().findPage(pageIndex, pageSize, afterId); }
+        @Override public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter, Integer afterId) { return s().findDuckPage(pageIndex, pageSize, filter, afterId); }
+        @Override public User findWithFriends(int id) { return s().findWithFriends(id); }
+        @Override public PageResult<User> findPageWithFriends(int pageIndex, int pageSize, Integer afterId) { return s().findPageWithFriends(pageIndex, pageSize, afterId); }
+        @Override public User findByEmail(String email) { return s().findByEmail(email); }
+        @Override public boolean emailExists(String email) { return s().emailExists(email); }
+        @Override public Map<Integer, User> findByIds(Collection<Integer> ids) { return s().findByIds(ids); }
+
+        @Override
+        public User save(User entity) throws RepoError {
+            return write(() -> s().save(entity), LogRecords::userPut);
+        }
+
+        @Override
+        public User delete(Integer id) {
+            return write(() -> s().delete(id), removed -> removed == null ? null : LogRecords.ids(LogRecords.USER_DELETE, id));
+        }
+
+        @Override
+        public void updatePassword(int userId, String hashedPassword) {
+            write(() -> s().updatePassword(userId, hashedPassword), LogRecords.passwordChange(userId, hashedPassword));
+        }
+
+        @Override
+        public void saveFriendship(int id1, int id2) {
+            write(() -> s().saveFriendship(id1, id2), LogRecords.ids(LogRecords.FRIEND_ADD, id1, id2));
+        }
+
+        @Override
+        public void deleteFriendship(int id1, int id2) {
+            write(() -> s().deleteFriendship(id1, id2), LogRecords.ids(LogRecords.FRIEND_REMOVE, id1, id2));
+        }
+
+        @Override
+        public void saveFriendships(Collection<int[]> pairs) {
+            write(() -> s().saveFriendships(pairs), pairRecords(LogRecords.FRIEND_ADD, pairs));
+        }
+
+        @Override
+        public void deleteFriendships(Collection<int[]> pairs) {
+            write(() -> s().deleteFriendships(pairs), pairRecords(LogRecords.FRIEND_REMOVE, pairs));
+        }
+
+        private List<byte[]> pairRecords(byte type, Collection<int[]> pairs) {
+            List<byte[]> records = new ArrayList<>(pairs.size());
+            for (int[] pair : pairs) records.add(LogRecords.ids(type, pair[0], pair[1]));
+            return records;
+        }
+    }
+
+    private class LoggedCardRepository implements CardRepository {
+        private InMemoryCardRepository s() { return state.cards(); }
+
+        @Override public Card findOne(Integer id) { return s().findOne(id); }
+        @Override public Iterable<Card> findAll() { return s().findAll(); }
+
+        @Override
+        public Card save(Card entity) throws RepoError {
+            return write(() -> s().save(entity), saved -> LogRecords.cardPut(saved.getId(), saved.getNumeCard()));
+        }
+
+        @Override
+        public Card delete(Integer id) {
+            return write(() -> s().delete(id), removed -> removed == null ? null : LogRecords.ids(LogRecords.CARD_DELETE, id));
+        }
+
+        @Override
+        public void addDuck(int cardId, int duckId) {
+            write(() -> s().addDuck(cardId, duckId), LogRecords.ids(LogRecords.CARD_ADD_DUCK, cardId, duckId));
+        }
+
+        @Override
+        public void removeDuck(int cardId, int duckId) {
+            write(() -> s().removeDuck(cardId, duckId), LogRecords.ids(LogRecords.CARD_REMOVE_DUCK, cardId, duckId));
+        }
+
+        @Override
+        public void removeDuckFromAll(int duckId) {
+            write(() -> s().removeDuckFromAll(duckId), LogRecords.ids(LogRecords.CARD_REMOVE_DUCK_ALL, duckId));
+        }
+    }
+
+    private class LoggedEventRepository implements EventRepository {
+        private InMemoryEventRepository s() { return state.events(); }
+
+        @Override public Event findOne(Integer id) { return s().findOne(id); }
+        @Override public Iterable<Event> findAll() { return s().findAll(); }
+
+        @Override
+        public Event save(Event entity) throws RepoError {
+            return write(() -> s().save(entity), LogRecords::eventPut);
+        }
+
+        @Override
+        public Event delete(Integer id) {
+            return write(() -> s().delete(id), removed -> removed == null ? null : LogRecords.ids(LogRecords.EVENT_DELETE, id));
+        }
+
+        @Override
+        public void addSubscriber(int eventId, int userId) {
+            write(() -> s().addSubscriber(eventId, userId), LogRecords.ids(LogRecords.EVENT_SUBSCRIBE, eventId, userId));
+        }
+
+        @Override
+        public void removeSubscriber(int eventId, int userId) {
+            write(() -> s().removeSubscriber(eventId, userId), LogRecords.ids(LogRecords.EVENT_UNSUBSCRIBE, eventId, userId));
+        }
+
+        @Override
+        public void addNotification(int eventId, String message) {
+            write(() -> s().addNotification(eventId, message), LogRecords.notification(eventId, message));
+        }
+
+        @Override
+        public void addNotifications(int eventId, List<String> messages) {
+            List<byte[]> records = new ArrayList<>(messages.size());
+            for (String message : messages) records.add(LogRecords.notification(eventId, message));
+            write(() -> s().addNotifications(eventId, messages), records);
+        }
+    }
+
+    private class LoggedMessageRepository implements MessageRepository {
+        private InMemoryMessageRepository s() { return state.messages(); }
+
+        @Override public Message findOne(Integer id) { return s().findOne(id); }
+        @Override public Iterable<Message> findAll() { return s().findAll(); }
+        @Override public Message delete(Integer id) { return s().delete(id); }
+        @Override public List<Message> findConversation(int userId, int otherUserId) { return s().findConversation(userId, otherUserId); }
+        @Override public List<Message> findThread(int messageId) { return s().findThread(messageId); }
+        @Override public List<Message> findConversationSince(int userId, int otherUserId, int afterId) { return s().findConversationSince(userId, otherUserId, afterId); }
+        @Override public List<Message> findConversationBefore(int userId, int otherUserId, Integer beforeId, int limit) { return s().findConversationBefore(userId, otherUserId, beforeId, limit); }
+        @Override public List<ConversationSummary> findInboxSummary(int userId) { return s().findInboxSummary(userId); }
+        @Override public List<Message> search(int userId, String query, int limit) { return s().search(userId, query, limit); }
+
+        @Override
+        public void markConversationRead(int userId, int partnerId, int upToMessageId) {
+            write(() -> s().markConversationRead(userId, partnerId, upToMessageId),
+                    LogRecords.ids(LogRecords.CONVERSATION_READ, userId, partnerId, upToMessageId));
+        }
+
+        @Override
+        public Message save(Message entity) {
+            return write(() -> s().save(entity), LogRecords::messagePut);
+        }
+
+        @Override
+        public Message saveReply(Message reply) {
+            return save(reply);
+        }
+
+        @Override
+        public List<Message> saveAll(List<Message> batch) {
+            return writeBatch(() -> s().saveAll(batch), saved -> {
+                List<byte[]> records = new ArrayList<>(saved.size());
+                for (Message m : saved) records.add(LogRecords.messagePut(m));
+                return records;
+            });
+        }
+    }
+
+    private class LoggedNotificationRepository implements NotificationRepository {
+        private InMemoryNotificationRepository s() { return state.notifications(); }
+
+        @Override public List<Notification> findInbox(int userId, Integer beforeId, int limit) { return s().findInbox(userId, beforeId, limit); }
+        @Override public int countUnread(int userId) { return s().countUnread(userId); }
+
+        @Override
+        public List<Notification> deliver(List<Delivery> deliveries) {
+            return writeBatch(() -> s().deliver(deliveries), stored -> {
+                List<byte[]> records = new ArrayList<>(stored.size());
+                for (int i = 0; i < stored.size(); i++) {
+                    records.add(LogRecords.notificationPut(stored.get(i), deliveries.get(i).recipientIds()));
+                }
+                return records;
+            });
+        }
+
+        @Override
+        public void markRead(int userId, int upToId) {
+            write(() -> s().markRead(userId, upToId), LogRecords.ids(LogRecords.INBOX_READ, userId, upToId));
+        }
+    }
+
+    private class LoggedRaceResultRepository implements RaceResultRepository {
+        private InMemoryRaceResultRepository s() { return state.raceResults(); }
+
+        @Override public List<RaceResult> findByRace(int raceId) { return s().findByRace(raceId); }
+        @Override public void forEach(Consumer<RaceResult> action) { s().forEach(action); }
+        @Override public void forEachAfter(long afterPosition, PositionedConsumer action) { s().forEachAfter(afterPosition, action); }
+
+        @Override
+        public void saveAll(List<RaceResult> results) {
+            if (results.isEmpty()) return;
+            List<RaceResult> copy = List.copyOf(results);
+            write(() -> s().saveAll(copy), LogRecords.raceResults(copy));
+        }
+    }
+}
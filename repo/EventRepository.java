@@ -2,8 +2,29 @@ package repo;
 
 import domain.Event;
 
+import java.util.List;
+
 /**
  * Repository interface specialization for {@link domain.Event} entities.
  */
 public interface EventRepository extends Repository<Integer, Event> {
+    /**
+     * Persist a subscription of a user to an event (no-op if already subscribed).
+     */
+    void addSubscriber(int eventId, int userId);
+
+    /**
+     * Remove a subscription of a user from an event.
+     */
+    void removeSubscriber(int eventId, int userId);
+
+    /**
+     * Append a message to the event's notification log.
+     */
+    void addNotification(int eventId, String message);
+
+    /**
+     * Append several messages to the event's notification log, in order, in one write.
+     */
+    void addNotifications(int eventId, List<String> messages);
 }
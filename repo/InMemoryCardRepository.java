@@ -0,0 +1,202 @@
+package repo;
+
+import domain.Card;
+import domain.Duck;
+import domain.User;
+import errors.RepoError;
+import util.IntObjectMap;
+import util.SortedIntList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe in-memory {@link CardRepository}. Stores card names and member ids only; members
+ * are hydrated from the {@link UserRepository} in one batch per read, like the JDBC version.
+ * A duck → cards index makes {@link #removeDuckFromAll(int)} proportional to the duck's cards.
+ */
+public class InMemoryCardRepository implements CardRepository {
+    private final UserRepository userRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<String> names = new IntObjectMap<>();
+    private final IntObjectMap<SortedIntList> members = new IntObjectMap<>();
+    private final IntObjectMap<SortedIntList> cardsByDuck = new IntObjectMap<>();
+    private final SortedIntList cardIds = new SortedIntList();
+    private int nextId = 1;
+
+    public InMemoryCardRepository(UserRepository userRepository) {
+        this.userRepository = Objects.requireNonNull(userRepository, "userRepository");
+    }
+
+    @Override
+    public Card findOne(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        String name;
+        int[] duckIds;
+        lock.readLock().lock();
+        try {
+            name = names.get(id);
+            if (name == null) return null;
+            duckIds = members.get(id).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+        Card card = new Card(id, name);
+        addMembers(card, duckIds);
+        return card;
+    }
+
+    @Override
+    public Iterable<Card> findAll() {
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            ids = cardIds.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Card> cards = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Card card = findOne(id);
+            if (card != null) cards.add(card);
+        }
+        return cards;
+    }
+
+    @Override
+    public Card save(Card entity) throws RepoError {
+        if (entity == null) throw new IllegalArgumentException("entity is null");
+        lock.writeLock().lock();
+        try {
+            int id = nextId++;
+            insert(id, entity.getNumeCard());
+            return new Card(id, entity.getNumeCard());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-create an empty card with its existing id (log replay / snapshot load).
+     */
+    void restore(int id, String numeCard) {
+        lock.writeLock().lock();
+        try {
+            insert(id, numeCard);
+            nextId = Math.max(nextId, id + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the id the next save assigns */
+    int nextId() {
+        lock.readLock().lock();
+        try {
+            return nextId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Raise the id counter to at least the given id (snapshot load).
+     */
+    void restoreNextId(int next) {
+        lock.writeLock().lock();
+        try {
+            nextId = Math.max(nextId, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(int id, String numeCard) {
+        names.put(id, numeCard);
+        members.put(id, new SortedIntList());
+        cardIds.add(id);
+    }
+
+    @Override
+    public Card delete(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        Card existing = findOne(id);
+        if (existing == null) return null;
+        lock.writeLock().lock();
+        try {
+            names.remove(id);
+            cardIds.remove(id);
+            SortedIntList ducks = members.remove(id);
+            if (ducks != null) {
+                for (int i = 0; i < ducks.size(); i++) {
+                    SortedIntList cards = cardsByDuck.get(ducks.get(i));
+                    if (cards != null) cards.remove(id);
+                }
+            }
+            return existing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addDuck(int cardId, int duckId) {
+        lock.writeLock().lock();
+        try {
+            SortedIntList ducks = members.get(cardId);
+            if (ducks == null) throw new RepoError("DB addDuck error: card " + cardId + " not found");
+            ducks.add(duckId);
+            SortedIntList cards = cardsByDuck.get(duckId);
+            if (cards == null) {
+                cards = new SortedIntList();
+                cardsByDuck.put(duckId, cards);
+            }
+            cards.add(cardId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeDuck(int cardId, int duckId) {
+        lock.writeLock().lock();
+        try {
+            SortedIntList ducks = members.get(cardId);
+            if (ducks != null) ducks.remove(duckId);
+            SortedIntList cards = cardsByDuck.get(duckId);
+            if (cards != null) cards.remove(cardId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeDuckFromAll(int duckId) {
+        lock.writeLock().lock();
+        try {
+            SortedIntList cards = cardsByDuck.remove(duckId);
+            if (cards == null) return;
+            for (int i = 0; i < cards.size(); i++) {
+                SortedIntList ducks = members.get(cards.get(i));
+                if (ducks != null) ducks.remove(duckId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addMembers(Card card, int[] duckIds) {
+        if (duckIds.length == 0) return;
+        List<Integer> ids = new ArrayList<>(duckIds.length);
+        for (int id : duckIds) ids.add(id);
+        Map<Integer, User> found = userRepository.findByIds(ids);
+        for (int id : duckIds) {
+            if (found.get(id) instanceof Duck duck) {
+                card.addDuck(duck);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package repo;
+
+import domain.Duck;
+import domain.Event;
+import domain.RaceEvent;
+import domain.User;
+import errors.RepoError;
+import util.IntObjectMap;
+import util.SortedIntList;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe in-memory {@link EventRepository} mirroring {@link PostgresEventRepository}:
+ * events, race configuration, participants, subscribers and the notification log are kept
+ * as plain rows and every read rebuilds a fresh {@link Event} / {@link RaceEvent}, hydrating
+ * subscribers and participants with a single batched user lookup.
+ */
+public class InMemoryEventRepository implements EventRepository {
+    private final UserRepository userRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<EventRow> events = new IntObjectMap<>();
+    private final SortedIntList eventIds = new SortedIntList();
+    private int nextId = 1;
+
+    private static final class EventRow {
+        final String name;
+        final boolean race;
+        final int lanes;
+        final double[] distances;
+        final int[] participants;
+        final SortedIntList subscribers = new SortedIntList();
+        final List<String> notifications = new ArrayList<>();
+
+        EventRow(String name, boolean race, int lanes, double[] distances, int[] participants) {
+            this.name = name;
+            this.race = race;
+            this.lanes = lanes;
+            this.distances = distances;
+            this.participants = participants;
+        }
+    }
+
+    public InMemoryEventRepository(UserRepository userRepository) {
+        this.userRepository = Objects.requireNonNull(userRepository, "userRepository");
+    }
+
+    @Override
+    public Event findOne(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        EventRow row;
+        int[] subscriberIds;
+        List<String> notifications;
+        lock.readLock().lock();
+        try {
+            row = events.get(id);
+            if (row == null) return null;
+            subscriberIds = row.subscribers.toArray();
+            notifications = new ArrayList<>(row.notifications);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Set<Integer> userIds = new HashSet<>();
+        for (int uid : subscriberIds) userIds.add(uid);
+        for (int did : row.participants) userIds.add(did);
+        Map<Integer, User> users = userRepository.findByIds(userIds);
+
+        Event event;
+        if (row.race) {
+            RaceEvent race = new RaceEvent(id, row.name, row.lanes);
+            race.setDistances(row.distances.clone());
+            for (int did : row.participants) {
+                if (users.get(did) instanceof Duck duck) {
+                    race.getParticipants().add(duck);
+                }
+            }
+            event = race;
+        } else {
+            event = new Event(id, row.name);
+        }
+        for (int uid : subscriberIds) {
+            User subscriber = users.get(uid);
+            if (subscriber != null) event.attachSubscriber(subscriber);
+        }
+        for (String message : notifications) {
+            event.appendNotification(message);
+        }
+        return event;
+    }
+
+    @Override
+    public Iterable<Event> findAll() {
+        int[] ids;
+        lock.readLock().lock();
+        try {
+            ids = eventIds.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Event> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Event e = findOne(id);
+            if (e != null) result.add(e);
+        }
+        return result;
+    }
+
+    @Override
+    public Event save(Event entity) throws RepoError {
+        if (entity == null) throw new IllegalArgumentException("entity is null");
+        EventRow row = toRow(entity);
+        lock.writeLock().lock();
+        try {
+            int id = nextId++;
+            events.put(id, row);
+            eventIds.add(id);
+            entity.setId(id);
+            return entity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-create an event (without subscribers or notifications) under its existing id
+     * (log replay / snapshot load).
+     */
+    void restore(int id, String name, boolean race, int lanes, double[] distances, int[] participants) {
+        EventRow row = new EventRow(name, race, lanes, distances, participants);
+        lock.writeLock().lock();
+        try {
+            events.put(id, row);
+            eventIds.add(id);
+            nextId = Math.max(nextId, id + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the id the next save assigns */
+    int nextId() {
+        lock.readLock().lock();
+        try {
+            return nextId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Raise the id counter to at least the given id (snapshot load).
+     */
+    void restoreNextId(int next) {
+        lock.writeLock().lock();
+        try {
+            nextId = Math.max(nextId, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static EventRow toRow(Event entity) {
+        if (entity instanceof RaceEvent race) {
+            int[] participants = race.getParticipants().stream().mapToInt(Duck::getId).toArray();
+            return new EventRow(race.getName(), true, race.getLanes(), race.getDistances(), participants);
+        }
+        return new EventRow(entity.getName(), false, 0, new double[0], new int[0]);
+    }
+
+    @Override
+    public Event delete(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        Event existing = findOne(id);
+        if (existing == null) return null;
+        lock.writeLock().lock();
+        try {
+            events.remove(id);
+            eventIds.remove(id);
+            return existing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addSubscriber(int eventId, int userId) {
+        lock.writeLock().lock();
+        try {
+            requireRow(eventId, "addSubscriber").subscribers.add(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeSubscriber(int eventId, int userId) {
+        lock.writeLock().lock();
+        try {
+            EventRow row = events.get(eventId);
+            if (row != null) row.subscribers.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addNotification(int eventId, String message) {
+        lock.writeLock().lock();
+        try {
+            requireRow(eventId, "addNotification").notifications.add(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addNotifications(int eventId, List<String> messages) {
+        lock.writeLock().lock();
+        try {
+            requireRow(eventId, "addNotifications").notifications.addAll(messages);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private EventRow requireRow(int eventId, String operation) {
+        EventRow row = events.get(eventId);
+        if (row == null) throw new RepoError("DB " + operation + " error: event " + eventId + " not found");
+        return row;
+    }
+}
@@ -0,0 +1,340 @@
+package repo;
+
+import domain.ConversationSummary;
+import domain.Message;
+import domain.User;
+import errors.RepoError;
+import util.IntObjectMap;
+import util.SortedIntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe in-memory {@link MessageRepository} mirroring {@link PostgresMessageRepository}.
+ * Messages are stored as id-keyed rows; a conversation index maps each unordered
+ * (sender, recipient) pair to its message ids, so loading a conversation never scans
+ * unrelated messages. A partner index lists everyone a user has exchanged messages with,
+ * which is all the inbox summary needs besides the conversation index.
+ */
+public class InMemoryMessageRepository implements MessageRepository {
+    private final UserRepository userRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<MessageRows.Row> messages = new IntObjectMap<>();
+    private final Map<Long, SortedIntList> conversations = new HashMap<>();
+    private final IntObjectMap<SortedIntList> partners = new IntObjectMap<>();
+    /** (reader, partner) -> newest partner message id the reader has seen */
+    private final Map<Long, Integer> readMarks = new HashMap<>();
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();
+    private int nextId = 1;
+
+    public InMemoryMessageRepository(UserRepository userRepository) {
+        this.userRepository = Objects.requireNonNull(userRepository, "userRepository");
+    }
+
+    @Override
+    public Message findOne(Integer id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id null");
+        }
+        List<MessageRows.Row> rows;
+        lock.readLock().lock();
+        try {
+            if (!messages.containsKey(id)) return null;
+            rows = rowsFor(new int[]{id});
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Message> built = MessageRows.hydrate(rows, userRepository, this::findOne);
+        return built.isEmpty() ? null : built.get(0);
+    }
+
+    @Override
+    public Iterable<Message> findAll() {
+        throw new UnsupportedOperationException("Use conversation queries");
+    }
+
+    @Override
+    public Message save(Message entity) {
+        if (entity == null) throw new IllegalArgumentException("message null");
+        Integer[] recipients = entity.getTo().stream().map(User::getId).toArray(Integer[]::new);
+        Integer replyTo = entity.getReplyToId();
+        int senderId = entity.getFrom().getId();
+        int id;
+        lock.writeLock().lock();
+        try {
+            id = nextId;
+            restore(new MessageRows.Row(id, senderId, recipients, entity.getMessage(), entity.getCreatedAt(), replyTo, false));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return entity.withId(id);
+    }
+
+    @Override
+    public List<Message> saveAll(List<Message> batch) {
+        List<Message> saved = new ArrayList<>(batch.size());
+        lock.writeLock().lock();
+        try {
+            for (Message m : batch) saved.add(save(m));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return saved;
+    }
+
+    /**
+     * Re-insert a stored row under its existing id (log replay / snapshot load).
+     */
+    void restore(MessageRows.Row row) {
+        lock.writeLock().lock();
+        try {
+            messages.put(row.id(), withWanted(row, false));
+            for (Integer rid : row.recipientIds()) {
+                conversations.computeIfAbsent(pairKey(row.senderId(), rid), k -> new SortedIntList()).add(row.id());
+                addPartner(row.senderId(), rid);
+                addPartner(rid, row.senderId());
+            }
+            searchIndex.add(row.id(), row.senderId(), row.recipientIds(), row.text());
+            nextId = Math.max(nextId, row.id() + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the id the next save assigns */
+    int nextId() {
+        lock.readLock().lock();
+        try {
+            return nextId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Raise the id counter to at least the given id (snapshot load).
+     */
+    void restoreNextId(int next) {
+        lock.writeLock().lock();
+        try {
+            nextId = Math.max(nextId, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return snapshot of every stored row in id order
+     */
+    List<MessageRows.Row> rows() {
+        lock.readLock().lock();
+        try {
+            List<MessageRows.Row> result = messages.values();
+            result.sort(Comparator.comparingInt(MessageRows.Row::id));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findConversationSince(int userId, int otherUserId, int afterId) {
+        List<MessageRows.Row> rows;
+        lock.readLock().lock();
+        try {
+            SortedIntList ids = conversations.get(pairKey(userId, otherUserId));
+            if (ids == null) return new ArrayList<>();
+            rows = rowsFor(slice(ids, ids.indexAfter(afterId), ids.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return MessageRows.hydrate(rows, userRepository, this::findOne);
+    }
+
+    @Override
+    public List<Message> findConversationBefore(int userId, int otherUserId, Integer beforeId, int limit) {
+        if (limit <= 0) throw new RepoError("Invalid pagination arguments");
+        List<MessageRows.Row> rows;
+        lock.readLock().lock();
+        try {
+            SortedIntList ids = conversations.get(pairKey(userId, otherUserId));
+            if (ids == null) return new ArrayList<>();
+            int end = beforeId == null ? ids.size() : ids.indexFrom(beforeId);
+            rows = rowsFor(slice(ids, Math.max(0, end - limit), end));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return MessageRows.hydrate(rows, userRepository, this::findOne);
+    }
+
+    @Override
+    public List<Message> search(int userId, String query, int limit) {
+        int[] ids = searchIndex.search(userId, query, limit);
+        List<MessageRows.Row> rows;
+        lock.readLock().lock();
+        try {
+            Arrays.sort(ids);
+            rows = rowsFor(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Message> result = MessageRows.hydrate(rows, userRepository, this::findOne);
+        result.sort(Comparator.comparingInt(Message::getId).reversed());
+        return result;
+    }
+
+    private static int[] slice(SortedIntList ids, int from, int to) {
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i++) result[i - from] = ids.get(i);
+        return result;
+    }
+
+    @Override
+    public List<ConversationSummary> findInboxSummary(int userId) {
+        List<MessageRows.Row> heads = new ArrayList<>();
+        List<Integer> partnerIds = new ArrayList<>();
+        List<Integer> unread = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            SortedIntList mine = partners.get(userId);
+            int count = mine == null ? 0 : mine.size();
+            for (int k = 0; k < count; k++) {
+                int partnerId = mine.get(k);
+                if (partnerId == userId) continue;
+                SortedIntList ids = conversations.get(pairKey(userId, partnerId));
+                heads.add(messages.get(ids.get(ids.size() - 1)));
+                partnerIds.add(partnerId);
+                int n = 0;
+                for (int i = ids.indexAfter(readMarks.getOrDefault(directedKey(userId, partnerId), 0)); i < ids.size(); i++) {
+                    if (messages.get(ids.get(i)).senderId() == partnerId) n++;
+                }
+                unread.add(n);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Map<Integer, User> users = userRepository.findByIds(partnerIds);
+        List<ConversationSummary> result = new ArrayList<>(heads.size());
+        for (int i = 0; i < heads.size(); i++) {
+            MessageRows.Row head = heads.get(i);
+            User partner = users.get(partnerIds.get(i));
+            if (partner == null) continue;
+            result.add(new ConversationSummary(partner, head.id(), head.senderId(), head.text(), head.createdAt(), unread.get(i)));
+        }
+        result.sort(Comparator.comparingInt(ConversationSummary::getLastMessageId).reversed());
+        return result;
+    }
+
+    @Override
+    public void markConversationRead(int userId, int partnerId, int upToMessageId) {
+        lock.writeLock().lock();
+        try {
+            readMarks.merge(directedKey(userId, partnerId), upToMessageId, Math::max);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return every read mark as {reader, partner, last read id} (for snapshots)
+     */
+    List<int[]> conversationReads() {
+        lock.readLock().lock();
+        try {
+            List<int[]> result = new ArrayList<>(readMarks.size());
+            readMarks.forEach((key, upTo) -> result.add(new int[]{(int) (key >>> 32), (int) (long) key, upTo}));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message delete(Integer id) {
+        throw new UnsupportedOperationException("Delete not supported");
+    }
+
+    @Override
+    public List<Message> findConversation(int userId, int otherUserId) {
+        List<MessageRows.Row> rows;
+        lock.readLock().lock();
+        try {
+            SortedIntList ids = conversations.get(pairKey(userId, otherUserId));
+            if (ids == null) return new ArrayList<>();
+            rows = rowsFor(ids.toArray());
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Message> result = MessageRows.hydrate(rows, userRepository, this::findOne);
+        result.sort(Comparator.comparing(Message::getCreatedAt).thenComparingInt(Message::getId));
+        return result;
+    }
+
+    @Override
+    public Message saveReply(Message reply) {
+        return save(reply);
+    }
+
+    @Override
+    public List<Message> findThread(int messageId) {
+        List<MessageRows.Row> rows = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Integer id = messageId;
+            while (id != null) {
+                MessageRows.Row row = messages.get(id);
+                if (row == null) break;
+                rows.add(withWanted(row, true));
+                id = row.replyTo();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Collections.reverse(rows);
+        return MessageRows.hydrate(rows, userRepository, this::findOne);
+    }
+
+    /**
+     * Rows for the given ascending ids, as {@link MessageRows#hydrate} requires; reply targets
+     * are not included. Caller holds the read lock.
+     */
+    private List<MessageRows.Row> rowsFor(int[] wantedIds) {
+        List<MessageRows.Row> rows = new ArrayList<>(wantedIds.length);
+        for (int id : wantedIds) {
+            MessageRows.Row row = messages.get(id);
+            if (row != null) rows.add(withWanted(row, true));
+        }
+        return rows;
+    }
+
+    private static MessageRows.Row withWanted(MessageRows.Row row, boolean wanted) {
+        return new MessageRows.Row(row.id(), row.senderId(), row.recipientIds(), row.text(), row.createdAt(), row.replyTo(), wanted);
+    }
+
+    private void addPartner(int userId, int partnerId) {
+        SortedIntList list = partners.get(userId);
+        if (list == null) {
+            list = new SortedIntList();
+            partners.put(userId, list);
+        }
+        list.add(partnerId);
+    }
+
+    private static long directedKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    private static long pairKey(int a, int b) {
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        return ((long) lo << 32) | (hi & 0xffffffffL);
+    }
+}
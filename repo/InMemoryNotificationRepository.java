@@ -0,0 +1,217 @@
+package repo;
+
+import domain.Notification;
+import errors.RepoError;
+import util.IntObjectMap;
+import util.SortedIntList;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe in-memory {@link NotificationRepository} mirroring
+ * {@link PostgresNotificationRepository}: small deliveries add the notification id to each
+ * recipient's inbox list, broadcasts keep one sorted recipient array and are matched with a
+ * binary search while an inbox is read.
+ */
+public class InMemoryNotificationRepository implements NotificationRepository {
+    private final int fanoutThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<Notification> notifications = new IntObjectMap<>();
+    private final IntObjectMap<int[]> broadcastRecipients = new IntObjectMap<>();
+    private final SortedIntList broadcastIds = new SortedIntList();
+    private final IntObjectMap<SortedIntList> inboxes = new IntObjectMap<>();
+    private final IntObjectMap<Integer> lastRead = new IntObjectMap<>();
+    private int nextId = 1;
+
+    /**
+     * A stored notification with its recipients, as needed to rebuild the store.
+     */
+    record Entry(Notification notification, int[] recipientIds) {}
+
+    public InMemoryNotificationRepository() {
+        this(PostgresNotificationRepository.DEFAULT_FANOUT_THRESHOLD);
+    }
+
+    public InMemoryNotificationRepository(int fanoutThreshold) {
+        this.fanoutThreshold = fanoutThreshold;
+    }
+
+    @Override
+    public List<Notification> deliver(List<Delivery> deliveries) {
+        List<Notification> stored = new ArrayList<>(deliveries.size());
+        LocalDateTime now = LocalDateTime.now();
+        lock.writeLock().lock();
+        try {
+            for (Delivery d : deliveries) {
+                Notification n = new Notification(nextId, d.eventId(), d.message(), now);
+                restore(n, d.recipientIds());
+                stored.add(n);
+            }
+            return stored;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Store a notification under its existing id (log replay / snapshot load).
+     */
+    void restore(Notification n, int[] recipientIds) {
+        lock.writeLock().lock();
+        try {
+            int id = n.getId();
+            notifications.put(id, n);
+            if (recipientIds.length > fanoutThreshold) {
+                int[] sorted = recipientIds.clone();
+                Arrays.sort(sorted);
+                broadcastRecipients.put(id, sorted);
+                broadcastIds.add(id);
+            } else {
+                for (int uid : recipientIds) {
+                    SortedIntList inbox = inboxes.get(uid);
+                    if (inbox == null) {
+                        inbox = new SortedIntList();
+                        inboxes.put(uid, inbox);
+                    }
+                    inbox.add(id);
+                }
+            }
+            nextId = Math.max(nextId, id + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the id the next save assigns */
+    int nextId() {
+        lock.readLock().lock();
+        try {
+            return nextId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Raise the id counter to at least the given id (snapshot load).
+     */
+    void restoreNextId(int next) {
+        lock.writeLock().lock();
+        try {
+            nextId = Math.max(nextId, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Notification> findInbox(int userId, Integer beforeId, int limit) {
+        if (limit <= 0) throw new RepoError("Invalid pagination arguments");
+        int before = beforeId == null ? Integer.MAX_VALUE : beforeId;
+        lock.readLock().lock();
+        try {
+            SortedIntList inbox = inboxes.get(userId);
+            int i = inbox == null ? -1 : inbox.indexFrom(before) - 1;
+            int j = broadcastIds.indexFrom(before) - 1;
+            List<Notification> page = new ArrayList<>(limit);
+            // merge both id lists backwards, skipping broadcasts the user did not receive
+            while (page.size() < limit) {
+                while (j >= 0 && !receives(broadcastIds.get(j), userId)) j--;
+                int direct = i >= 0 ? inbox.get(i) : -1;
+                int broadcast = j >= 0 ? broadcastIds.get(j) : -1;
+                if (direct < 0 && broadcast < 0) break;
+                if (direct > broadcast) {
+                    page.add(notifications.get(direct));
+                    i--;
+                } else {
+                    page.add(notifications.get(broadcast));
+                    j--;
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countUnread(int userId) {
+        lock.readLock().lock();
+        try {
+            Integer mark = lastRead.get(userId);
+            int from = mark == null ? 0 : mark;
+            SortedIntList inbox = inboxes.get(userId);
+            int count = inbox == null ? 0 : inbox.size() - inbox.indexAfter(from);
+            for (int j = broadcastIds.indexAfter(from); j < broadcastIds.size(); j++) {
+                if (receives(broadcastIds.get(j), userId)) count++;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void markRead(int userId, int upToId) {
+        lock.writeLock().lock();
+        try {
+            Integer mark = lastRead.get(userId);
+            if (mark == null || upToId > mark) lastRead.put(userId, upToId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return every notification with its recipients, in id order (for snapshots)
+     */
+    List<Entry> entries() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, List<Integer>> recipients = new LinkedHashMap<>();
+            inboxes.forEachKey(uid -> {
+                SortedIntList inbox = inboxes.get(uid);
+                for (int k = 0; k < inbox.size(); k++) {
+                    recipients.computeIfAbsent(inbox.get(k), x -> new ArrayList<>()).add(uid);
+                }
+            });
+            List<Notification> all = notifications.values();
+            all.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            List<Entry> result = new ArrayList<>(all.size());
+            for (Notification n : all) {
+                int[] ids = broadcastRecipients.get(n.getId());
+                if (ids == null) {
+                    ids = recipients.getOrDefault(n.getId(), List.of()).stream().mapToInt(Integer::intValue).toArray();
+                }
+                result.add(new Entry(n, ids));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return read marks by user id (for snapshots)
+     */
+    Map<Integer, Integer> readMarks() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> marks = new LinkedHashMap<>();
+            lastRead.forEachKey(uid -> marks.put(uid, lastRead.get(uid)));
+            return marks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean receives(int notificationId, int userId) {
+        return Arrays.binarySearch(broadcastRecipients.get(notificationId), userId) >= 0;
+    }
+}
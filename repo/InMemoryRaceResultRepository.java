@@ -0,0 +1,71 @@
+package repo;
+
+import domain.RaceResult;
+import util.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe in-memory {@link RaceResultRepository}: one list in save order plus a per-race
+ * index.
+ */
+public class InMemoryRaceResultRepository implements RaceResultRepository {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<RaceResult> results = new ArrayList<>();
+    private final IntObjectMap<List<RaceResult>> byRace = new IntObjectMap<>();
+
+    @Override
+    public void saveAll(List<RaceResult> batch) {
+        lock.writeLock().lock();
+        try {
+            for (RaceResult r : batch) {
+                results.add(r);
+                List<RaceResult> race = byRace.get(r.getRaceId());
+                if (race == null) {
+                    race = new ArrayList<>();
+                    byRace.put(r.getRaceId(), race);
+                }
+                race.add(r);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<RaceResult> findByRace(int raceId) {
+        lock.readLock().lock();
+        try {
+            List<RaceResult> race = byRace.get(raceId);
+            return race == null ? new ArrayList<>() : new ArrayList<>(race);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<RaceResult> action) {
+        lock.readLock().lock();
+        try {
+            results.forEach(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Positions are 1-based indexes into the save order. */
+    @Override
+    public void forEachAfter(long afterPosition, PositionedConsumer action) {
+        lock.readLock().lock();
+        try {
+            for (int i = (int) Math.max(afterPosition, 0); i < results.size(); i++) {
+                action.accept(i + 1, results.get(i));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package repo;
+
+import domain.*;
+import errors.RepoError;
+import util.IntObjectMap;
+import util.PageResult;
+import util.SortedIntList;
+import util.TopKSelector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Thread-safe in-memory {@link UserRepository}, behaving like {@link PostgresUserRepository}:
+ * ids are generated on save, every read returns fresh entity instances, and friend lists are
+ * only filled by findAll, findWithFriends and findPageWithFriends.
+ *
+ * Storage is keyed by primitive ids ({@link IntObjectMap}) with secondary indexes for
+ * email, duck type and id order ({@link SortedIntList}), so lookups are O(1), offset pages
+ * are O(page size) and keyset pages add a binary search.
+ */
+public class InMemoryUserRepository implements UserRepository {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<User> users = new IntObjectMap<>();
+    private final IntObjectMap<SortedIntList> friends = new IntObjectMap<>();
+    private final Map<String, Integer> emailIndex = new HashMap<>();
+    private final SortedIntList allIds = new SortedIntList();
+    private final SortedIntList duckIds = new SortedIntList();
+    private final Map<TipRata, SortedIntList> duckIdsByType = new EnumMap<>(TipRata.class);
+    private int nextId = 1;
+
+    public InMemoryUserRepository() {
+        for (TipRata tip : TipRata.values()) {
+            duckIdsByType.put(tip, new SortedIntList());
+        }
+    }
+
+    @Override
+    public User findOne(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        lock.readLock().lock();
+        try {
+            return copyOf(users.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<User> findAll() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, User> map = new LinkedHashMap<>();
+            for (int i = 0; i < allIds.size(); i++) {
+                int id = allIds.get(i);
+                map.put(id, copyOf(users.get(id)));
+            }
+            linkFriends(map, false);
+            return map.values();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterable<Duck> findAllDucks() {
+        lock.readLock().lock();
+        try {
+            List<Duck> result = new ArrayList<>(duckIds.size());
+            for (int i = 0; i < duckIds.size(); i++) {
+                result.add((Duck) copyOf(users.get(duckIds.get(i))));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Duck> findTopSwimmers(int limit) {
+        if (limit <= 0) throw new RepoError("Invalid limit");
+        lock.readLock().lock();
+        try {
+            // only the swimming type indexes are read, merged back into id order so that equal
+            // keys rank by id like the Postgres ORDER BY
+            SortedIntList swimming = duckIdsByType.get(TipRata.SWIMMING);
+            SortedIntList amphibious = duckIdsByType.get(TipRata.FLYING_AND_SWIMMING);
+            int n = swimming.size() + amphibious.size();
+            int[] ids = new int[n];
+            double[] speed = new double[n];
+            double[] endurance = new double[n];
+            for (int i = 0, a = 0, b = 0; i < n; i++) {
+                boolean fromSwimming = b == amphibious.size() || (a < swimming.size() && swimming.get(a) < amphibious.get(b));
+                ids[i] = fromSwimming ? swimming.get(a++) : amphibious.get(b++);
+                Duck d = (Duck) users.get(ids[i]);
+                speed[i] = d.getViteza();
+                endurance[i] = d.getRezistenta();
+            }
+            List<Duck> result = new ArrayList<>();
+            for (int i : TopKSelector.select(speed, endurance, n, limit)) {
+                Duck d = (Duck) users.get(ids[i]);
+                result.add(newDuck(d.getTipRata(), d.getId(), d.getUsername(), null, null, d.getViteza(), d.getRezistenta()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public PageResult<User> findPage(int pageIndex, int pageSize) {
+        return offsetPage(allIds, pageIndex, pageSize);
+    }
+
+    @Override
+    public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter) {
+        PageResult<User> page = offsetPage(duckIndex(filter), pageIndex, pageSize);
+        return new PageResult<>(page.getItems().stream().map(Duck.class::cast).toList(), pageIndex, pageSize, page.getTotalItems());
+    }
+
+    @Override
+    public PageResult<User> findPage(int pageIndex, int pageSize, Integer afterId) {
+        return seekPage(allIds, pageIndex, pageSize, afterId);
+    }
+
+    @Override
+    public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter, Integer afterId) {
+        PageResult<User> page = seekPage(duckIndex(filter), pageIndex, pageSize, afterId);
+        return new PageResult<>(page.getItems().stream().map(Duck.class::cast).toList(), pageIndex, pageSize,
+                page.getTotalItems(), page.getNextCursor());
+    }
+
+    @Override
+    public PageResult<User> findPageWithFriends(int pageIndex, int pageSize, Integer afterId) {
+        lock.readLock().lock();
+        try {
+            PageResult<User> page = seekPage(allIds, pageIndex, pageSize, afterId);
+            Map<Integer, User> map = new LinkedHashMap<>();
+            for (User u : page.getItems()) map.put(u.getId(), u);
+            linkFriends(map, true);
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User findWithFriends(int id) {
+        lock.readLock().lock();
+        try {
+            User found = copyOf(users.get(id));
+            if (found == null) return null;
+            Map<Integer, User> single = new HashMap<>();
+            single.put(id, found);
+            linkFriends(single, true);
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, User> findByIds(Collection<Integer> ids) {
+        Map<Integer, User> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) return result;
+        lock.readLock().lock();
+        try {
+            for (Integer id : ids) {
+                if (id == null || result.containsKey(id)) continue;
+                User u = users.get(id);
+                if (u != null) result.put(id, copyOf(u));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        if (email == null) return null;
+        lock.readLock().lock();
+        try {
+            Integer id = emailIndex.get(email.toLowerCase());
+            return id == null ? null : copyOf(users.get(id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        if (email == null) return false;
+        lock.readLock().lock();
+        try {
+            return emailIndex.containsKey(email.toLowerCase());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User save(User entity) throws RepoError {
+        if (entity == null) throw new IllegalArgumentException("user is null");
+        if (!(entity instanceof Persoana) && !(entity instanceof Duck)) throw new RepoError("Unknown user subtype");
+        lock.writeLock().lock();
+        try {
+            if (entity.getEmail() != null && emailIndex.containsKey(entity.getEmail())) {
+                throw new RepoError("Email already exists");
+            }
+            entity.setId(nextId++);
+            insert(copyOf(entity));
+            return entity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-insert a user with its existing id (log replay / snapshot load). Caller must not expose
+     * the instance afterwards.
+     */
+    void restore(User user) {
+        lock.writeLock().lock();
+        try {
+            insert(copyOf(user));
+            nextId = Math.max(nextId, user.getId() + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the id the next save assigns */
+    int nextId() {
+        lock.readLock().lock();
+        try {
+            return nextId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Raise the id counter to at least the given id (snapshot load).
+     */
+    void restoreNextId(int next) {
+        lock.writeLock().lock();
+        try {
+            nextId = Math.max(nextId, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(User stored) {
+        int id = stored.getId();
+        users.put(id, stored);
+        if (stored.getEmail() != null) emailIndex.put(stored.getEmail(), id);
+        allIds.add(id);
+        if (stored instanceof Duck d) {
+            duckIds.add(id);
+            duckIdsByType.get(d.getTipRata()).add(id);
+        }
+    }
+
+    @Override
+    public User delete(Integer id) {
+        if (id == null) throw new IllegalArgumentException("id is null");
+        lock.writeLock().lock();
+        try {
+            User removed = users.remove(id);
+            if (removed == null) return null;
+            if (removed.getEmail() != null) emailIndex.remove(removed.getEmail());
+            allIds.remove(id);
+            if (removed instanceof Duck d) {
+                duckIds.remove(id);
+                duckIdsByType.get(d.getTipRata()).remove(id);
+            }
+            // same effect as ON DELETE CASCADE on user_friend
+            SortedIntList adjacency = friends.remove(id);
+            if (adjacency != null) {
+                for (int i = 0; i < adjacency.size(); i++) {
+                    SortedIntList other = friends.get(adjacency.get(i));
+                    if (other != null) other.remove(id);
+                }
+            }
+            return copyOf(removed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updatePassword(int userId, String hashedPassword) {
+        lock.writeLock().lock();
+        try {
+            User u = users.get(userId);
+            if (u != null) u.setPassword(hashedPassword);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveFriendship(int id1, int id2) {
+        if (id1 == id2) throw new RepoError("Cannot friend self");
+        lock.writeLock().lock();
+        try {
+            if (!users.containsKey(id1) || !users.containsKey(id2)) {
+                throw new RepoError("DB saveFriendship error: unknown user");
+            }
+            adjacency(id1).add(id2);
+            adjacency(id2).add(id1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteFriendship(int id1, int id2) {
+        lock.writeLock().lock();
+        try {
+            SortedIntList a = friends.get(id1);
+            if (a != null) a.remove(id2);
+            SortedIntList b = friends.get(id2);
+            if (b != null) b.remove(id1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveFriendships(Collection<int[]> pairs) {
+        lock.writeLock().lock();
+        try {
+            // check everything first so a bad pair leaves no partial batch behind
+            for (int[] pair : pairs) {
+                if (pair[0] == pair[1]) throw new RepoError("Cannot friend self");
+                if (!users.containsKey(pair[0]) || !users.containsKey(pair[1])) {
+                    throw new RepoError("DB saveFriendships error: unknown user");
+                }
+            }
+            for (int[] pair : pairs) {
+                adjacency(pair[0]).add(pair[1]);
+                adjacency(pair[1]).add(pair[0]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteFriendships(Collection<int[]> pairs) {
+        lock.writeLock().lock();
+        try {
+            for (int[] pair : pairs) {
+                SortedIntList a = friends.get(pair[0]);
+                if (a != null) a.remove(pair[1]);
+                SortedIntList b = friends.get(pair[1]);
+                if (b != null) b.remove(pair[0]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private SortedIntList duckIndex(TipRata filter) {
+        return filter == null ? duckIds : duckIdsByType.get(filter);
+    }
+
+    private PageResult<User> offsetPage(SortedIntList index, int pageIndex, int pageSize) {
+        if (pageIndex < 0 || pageSize <= 0) {
+            throw new RepoError("Invalid pagination arguments");
+        }
+        lock.readLock().lock();
+        try {
+            long offset = (long) pageIndex * pageSize;
+            List<User> items = new ArrayList<>();
+            for (long i = offset; i < index.size() && i < offset + pageSize; i++) {
+                items.add(copyOf(users.get(index.get((int) i))));
+            }
+            return new PageResult<>(items, pageIndex, pageSize, index.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PageResult<User> seekPage(SortedIntList index, int pageIndex, int pageSize, Integer afterId) {
+        if (pageIndex < 0 || pageSize <= 0) {
+            throw new RepoError("Invalid pagination arguments");
+        }
+        lock.readLock().lock();
+        try {
+            int start = afterId == null ? 0 : index.indexAfter(afterId);
+            int end = (int) Math.min(index.size(), (long) start + pageSize);
+            List<User> items = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                items.add(copyOf(users.get(index.get(i))));
+            }
+            Integer next = end < index.size() ? index.get(end - 1) : null;
+            return new PageResult<>(items, pageIndex, pageSize, index.size(), next);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fill friend lists of the given users. With includeOutside, friends not in the map are
+     * attached as fresh friendless copies (like PostgresUserRepository's page-scoped loading).
+     * Caller holds the read lock.
+     */
+    private void linkFriends(Map<Integer, User> map, boolean includeOutside) {
+        Map<Integer, User> outside = new HashMap<>();
+        for (User u : map.values()) {
+            SortedIntList adjacency = friends.get(u.getId());
+            if (adjacency == null) continue;
+            for (int i = 0; i < adjacency.size(); i++) {
+                int fid = adjacency.get(i);
+                User friend = map.get(fid);
+                if (friend == null && includeOutside) {
+                    friend = outside.computeIfAbsent(fid, k -> copyOf(users.get(k)));
+                }
+                if (friend != null) u.addFriend(friend);
+            }
+        }
+    }
+
+    private SortedIntList adjacency(int id) {
+        SortedIntList list = friends.get(id);
+        if (list == null) {
+            list = new SortedIntList();
+            friends.put(id, list);
+        }
+        return list;
+    }
+
+    /**
+     * Detached copy without friends, so callers never share state with the store; also used by
+     * {@link CachingUserRepository}.
+     */
+    static User copyOf(User u) {
+        if (u == null) return null;
+        if (u instanceof Persoana p) {
+            return new Persoana(p.getId(), p.getUsername(), p.getEmail(), p.getPassword(), p.getNume(), p.getPrenume(),
+                    p.getOcupatie(), p.getDataNasterii(), p.getNivelEmpatie());
+        }
+        Duck d = (Duck) u;
+        return newDuck(d.getTipRata(), d.getId(), d.getUsername(), d.getEmail(), d.getPassword(), d.getViteza(), d.getRezistenta());
+    }
+
+    private static Duck newDuck(TipRata tip, int id, String username, String email, String password, double viteza, double rezistenta) {
+        return switch (tip) {
+            case FLYING -> new FlyingDuck(id, username, email, password, viteza, rezistenta);
+            case SWIMMING -> new SwimmingDuck(id, username, email, password, viteza, rezistenta);
+            case FLYING_AND_SWIMMING -> new AmphibiousDuck(id, username, email, password, viteza, rezistenta);
+        };
+    }
+}
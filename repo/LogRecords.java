@@ -0,0 +1,354 @@
+package repo;
+
+import domain.*;
+import errors.RepoError;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of the mutations logged by {@link EmbeddedStore}, and their replay onto the
+ * in-memory repositories. Every record carries the ids the live store assigned, so replay
+ * rebuilds exactly the same state regardless of id generation.
+ */
+final class LogRecords {
+    private LogRecords() {}
+
+    static final byte SNAPSHOT_MARK = 0;
+    static final byte USER_PUT = 1;
+    static final byte USER_DELETE = 2;
+    static final byte USER_PASSWORD = 3;
+    static final byte FRIEND_ADD = 4;
+    static final byte FRIEND_REMOVE = 5;
+    static final byte CARD_PUT = 6;
+    static final byte CARD_DELETE = 7;
+    static final byte CARD_ADD_DUCK = 8;
+    static final byte CARD_REMOVE_DUCK = 9;
+    static final byte CARD_REMOVE_DUCK_ALL = 10;
+    static final byte EVENT_PUT = 11;
+    static final byte EVENT_DELETE = 12;
+    static final byte EVENT_SUBSCRIBE = 13;
+    static final byte EVENT_UNSUBSCRIBE = 14;
+    static final byte EVENT_NOTIFY = 15;
+    static final byte MESSAGE_PUT = 16;
+    static final byte NOTIFICATION_PUT = 17;
+    static final byte INBOX_READ = 18;
+    static final byte CONVERSATION_READ = 19;
+    static final byte RACE_RESULTS = 20;
+    /** Race results with round and heat; replaces RACE_RESULTS, which is still read. */
+    static final byte HEAT_RESULTS = 21;
+
+    private static final byte KIND_PERSOANA = 0;
+    private static final byte KIND_DUCK = 1;
+
+    /**
+     * The repositories a replay writes into.
+     */
+    record Targets(InMemoryUserRepository users, InMemoryCardRepository cards,
+                   InMemoryEventRepository events, InMemoryMessageRepository messages,
+                   InMemoryNotificationRepository notifications, InMemoryRaceResultRepository raceResults) {}
+
+    /**
+     * First record of a snapshot. Carries the id counters of the repositories, since ids of
+     * deleted rows must not be handed out again and cannot be derived from the remaining rows.
+     */
+    static byte[] snapshotMark(Targets t) {
+        return ids(SNAPSHOT_MARK, t.users().nextId(), t.cards().nextId(), t.events().nextId(),
+                t.messages().nextId(), t.notifications().nextId());
+    }
+
+    static byte[] ids(byte type, int... ids) {
+        Writer w = new Writer(type);
+        for (int id : ids) w.writeInt(id);
+        return w.toBytes();
+    }
+
+    static byte[] userPut(User user) {
+        Writer w = new Writer(USER_PUT);
+        w.writeInt(user.getId());
+        w.writeString(user.getUsername());
+        w.writeString(user.getEmail());
+        w.writeString(user.getPassword());
+        if (user instanceof Persoana p) {
+            w.writeByte(KIND_PERSOANA);
+            w.writeString(p.getNume());
+            w.writeString(p.getPrenume());
+            w.writeString(p.getOcupatie());
+            w.writeLong(p.getDataNasterii() == null ? Long.MIN_VALUE : p.getDataNasterii().toEpochDay());
+            w.writeInt(p.getNivelEmpatie());
+        } else if (user instanceof Duck d) {
+            w.writeByte(KIND_DUCK);
+            w.writeByte(d.getTipRata().ordinal());
+            w.writeDouble(d.getViteza());
+            w.writeDouble(d.getRezistenta());
+        } else {
+            throw new RepoError("Unknown user subtype");
+        }
+        return w.toBytes();
+    }
+
+    static byte[] passwordChange(int userId, String hashedPassword) {
+        Writer w = new Writer(USER_PASSWORD);
+        w.writeInt(userId);
+        w.writeString(hashedPassword);
+        return w.toBytes();
+    }
+
+    static byte[] cardPut(int id, String name) {
+        Writer w = new Writer(CARD_PUT);
+        w.writeInt(id);
+        w.writeString(name);
+        return w.toBytes();
+    }
+
+    static byte[] eventPut(Event event) {
+        Writer w = new Writer(EVENT_PUT);
+        w.writeInt(event.getId());
+        w.writeString(event.getName());
+        if (event instanceof RaceEvent race) {
+            w.writeByte(1);
+            w.writeInt(race.getLanes());
+            double[] distances = race.getDistances();
+            w.writeInt(distances.length);
+            for (double d : distances) w.writeDouble(d);
+            w.writeInt(race.getParticipants().size());
+            for (Duck duck : race.getParticipants()) w.writeInt(duck.getId());
+        } else {
+            w.writeByte(0);
+        }
+        return w.toBytes();
+    }
+
+    static byte[] notification(int eventId, String message) {
+        Writer w = new Writer(EVENT_NOTIFY);
+        w.writeInt(eventId);
+        w.writeString(message);
+        return w.toBytes();
+    }
+
+    static byte[] messagePut(MessageRows.Row row) {
+        Writer w = new Writer(MESSAGE_PUT);
+        w.writeInt(row.id());
+        w.writeInt(row.senderId());
+        w.writeInt(row.recipientIds().length);
+        for (Integer rid : row.recipientIds()) w.writeInt(rid);
+        w.writeString(row.text());
+        w.writeLong(row.createdAt().toEpochSecond(ZoneOffset.UTC));
+        w.writeInt(row.createdAt().getNano());
+        w.writeInt(row.replyTo() == null ? -1 : row.replyTo());
+        return w.toBytes();
+    }
+
+    static byte[] messagePut(Message message) {
+        Integer[] recipients = message.getTo().stream().map(User::getId).toArray(Integer[]::new);
+        return messagePut(new MessageRows.Row(message.getId(), message.getFrom().getId(), recipients,
+                message.getMessage(), message.getCreatedAt(), message.getReplyToId(), false));
+    }
+
+    static byte[] notificationPut(Notification n, int[] recipientIds) {
+        Writer w = new Writer(NOTIFICATION_PUT);
+        w.writeInt(n.getId());
+        w.writeInt(n.getEventId());
+        w.writeString(n.getMessage());
+        w.writeLong(n.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        w.writeInt(n.getCreatedAt().getNano());
+        w.writeInt(recipientIds.length);
+        for (int id : recipientIds) w.writeInt(id);
+        return w.toBytes();
+    }
+
+    static byte[] raceResults(List<RaceResult> results) {
+        Writer w = new Writer(HEAT_RESULTS);
+        w.writeInt(results.size());
+        for (RaceResult r : results) {
+            w.writeInt(r.getRaceId());
+            w.writeInt(r.getLane());
+            w.writeInt(r.getDuckId());
+            w.writeDouble(r.getTime());
+            w.writeInt(r.getRound());
+            w.writeInt(r.getHeat());
+        }
+        return w.toBytes();
+    }
+
+    /**
+     * Apply one record to the target repositories.
+     */
+    static void apply(byte[] payload, Targets t) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            switch (type) {
+                case SNAPSHOT_MARK -> readCounters(in, t);
+                case USER_PUT -> t.users().restore(readUser(in));
+                case USER_DELETE -> t.users().delete(in.readInt());
+                case USER_PASSWORD -> t.users().updatePassword(in.readInt(), readString(in));
+                case FRIEND_ADD -> t.users().saveFriendship(in.readInt(), in.readInt());
+                case FRIEND_REMOVE -> t.users().deleteFriendship(in.readInt(), in.readInt());
+                case CARD_PUT -> t.cards().restore(in.readInt(), readString(in));
+                case CARD_DELETE -> t.cards().delete(in.readInt());
+                case CARD_ADD_DUCK -> t.cards().addDuck(in.readInt(), in.readInt());
+                case CARD_REMOVE_DUCK -> t.cards().removeDuck(in.readInt(), in.readInt());
+                case CARD_REMOVE_DUCK_ALL -> t.cards().removeDuckFromAll(in.readInt());
+                case EVENT_PUT -> readEvent(in, t.events());
+                case EVENT_DELETE -> t.events().delete(in.readInt());
+                case EVENT_SUBSCRIBE -> t.events().addSubscriber(in.readInt(), in.readInt());
+                case EVENT_UNSUBSCRIBE -> t.events().removeSubscriber(in.readInt(), in.readInt());
+                case EVENT_NOTIFY -> t.events().addNotification(in.readInt(), readString(in));
+                case MESSAGE_PUT -> t.messages().restore(readMessage(in));
+                case NOTIFICATION_PUT -> readNotification(in, t.notifications());
+                case INBOX_READ -> t.notifications().markRead(in.readInt(), in.readInt());
+                case CONVERSATION_READ -> t.messages().markConversationRead(in.readInt(), in.readInt(), in.readInt());
+                case RACE_RESULTS -> t.raceResults().saveAll(readRaceResults(in, false));
+                case HEAT_RESULTS -> t.raceResults().saveAll(readRaceResults(in, true));
+                default -> throw new RepoError("DB log replay error: unknown record type " + type);
+            }
+        } catch (IOException e) {
+            throw new RepoError("DB log replay error: " + e.getMessage());
+        }
+    }
+
+    private static void readCounters(DataInputStream in, Targets t) throws IOException {
+        // snapshots written before the counters were added hold the type byte only
+        if (in.available() == 0) return;
+        t.users().restoreNextId(in.readInt());
+        t.cards().restoreNextId(in.readInt());
+        t.events().restoreNextId(in.readInt());
+        t.messages().restoreNextId(in.readInt());
+        t.notifications().restoreNextId(in.readInt());
+    }
+
+    private static User readUser(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String username = readString(in);
+        String email = readString(in);
+        String password = readString(in);
+        byte kind = in.readByte();
+        if (kind == KIND_PERSOANA) {
+            String nume = readString(in);
+            String prenume = readString(in);
+            String ocupatie = readString(in);
+            long epochDay = in.readLong();
+            LocalDate birth = epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+            return new Persoana(id, username, email, password, nume, prenume, ocupatie, birth, in.readInt());
+        }
+        TipRata tip = TipRata.values()[in.readByte()];
+        double viteza = in.readDouble();
+        double rezistenta = in.readDouble();
+        return switch (tip) {
+            case FLYING -> new FlyingDuck(id, username, email, password, viteza, rezistenta);
+            case SWIMMING -> new SwimmingDuck(id, username, email, password, viteza, rezistenta);
+            case FLYING_AND_SWIMMING -> new AmphibiousDuck(id, username, email, password, viteza, rezistenta);
+        };
+    }
+
+    private static void readEvent(DataInputStream in, InMemoryEventRepository events) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        if (in.readByte() == 0) {
+            events.restore(id, name, false, 0, new double[0], new int[0]);
+            return;
+        }
+        int lanes = in.readInt();
+        double[] distances = new double[in.readInt()];
+        for (int i = 0; i < distances.length; i++) distances[i] = in.readDouble();
+        int[] participants = new int[in.readInt()];
+        for (int i = 0; i < participants.length; i++) participants[i] = in.readInt();
+        events.restore(id, name, true, lanes, distances, participants);
+    }
+
+    private static MessageRows.Row readMessage(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        int senderId = in.readInt();
+        Integer[] recipients = new Integer[in.readInt()];
+        for (int i = 0; i < recipients.length; i++) recipients[i] = in.readInt();
+        String text = readString(in);
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        int replyTo = in.readInt();
+        return new MessageRows.Row(id, senderId, recipients, text, createdAt, replyTo < 0 ? null : replyTo, false);
+    }
+
+    private static void readNotification(DataInputStream in, InMemoryNotificationRepository notifications) throws IOException {
+        int id = in.readInt();
+        int eventId = in.readInt();
+        String message = readString(in);
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        int[] recipients = new int[in.readInt()];
+        for (int i = 0; i < recipients.length; i++) recipients[i] = in.readInt();
+        notifications.restore(new Notification(id, eventId, message, createdAt), recipients);
+    }
+
+    private static List<RaceResult> readRaceResults(DataInputStream in, boolean withHeat) throws IOException {
+        int n = in.readInt();
+        List<RaceResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int raceId = in.readInt();
+            int lane = in.readInt();
+            int duckId = in.readInt();
+            double time = in.readDouble();
+            results.add(withHeat
+                    ? new RaceResult(raceId, lane, duckId, time, in.readInt(), in.readInt())
+                    : new RaceResult(raceId, lane, duckId, time));
+        }
+        return results;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new IOException("truncated record");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * DataOutputStream over a byte array; strings are length-prefixed UTF-8 (-1 for null) so
+     * message texts are not limited to writeUTF's 64 KiB.
+     */
+    private static final class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Writer(byte type) {
+            writeByte(type);
+        }
+
+        void writeByte(int v) {
+            try { out.writeByte(v); } catch (IOException e) { throw new IllegalStateException(e); }
+        }
+
+        void writeInt(int v) {
+            try { out.writeInt(v); } catch (IOException e) { throw new IllegalStateException(e); }
+        }
+
+        void writeLong(long v) {
+            try { out.writeLong(v); } catch (IOException e) { throw new IllegalStateException(e); }
+        }
+
+        void writeDouble(double v) {
+            try { out.writeDouble(v); } catch (IOException e) { throw new IllegalStateException(e); }
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        byte[] toBytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package repo;
 
+import domain.ConversationSummary;
 import domain.Message;
 
 import java.util.List;
@@ -9,6 +10,53 @@ import java.util.List;
  */
 public interface MessageRepository extends Repository<Integer, Message> {
     List<Message> findConversation(int userId, int otherUserId);
+
+    /**
+     * The reply chain of a message, loaded at once: the message and every message it
+     * (transitively) replies to, oldest first, each linked to its reply target.
+     */
+    List<Message> findThread(int messageId);
+
+    /**
+     * Messages between the two users with an id greater than afterId, oldest first.
+     */
+    List<Message> findConversationSince(int userId, int otherUserId, int afterId);
+
+    /**
+     * Reverse keyset page: the newest {@code limit} messages between the two users with an id
+     * below beforeId (null: the latest messages), returned oldest first.
+     */
+    List<Message> findConversationBefore(int userId, int otherUserId, Integer beforeId, int limit);
     Message saveReply(Message reply);
+
+    /**
+     * Save several messages (plain or replies) in one write; all of them are stored or none.
+     *
+     * @return the saved messages with their generated ids, in input order
+     */
+    List<Message> saveAll(List<Message> messages);
+
+    /**
+     * One row per conversation partner of the user, with the latest message exchanged and the
+     * number of the partner's messages newer than the user's read mark; newest conversation first.
+     */
+    List<ConversationSummary> findInboxSummary(int userId);
+
+    /**
+     * Full-text search over the messages the user sent or received, newest first. Words must all
+     * occur, {@code word*} matches a prefix and {@code "quoted words"} a phrase.
+     */
+    List<Message> search(int userId, String query, int limit);
+
+    /**
+     * Bring messages with an id in [fromId, toId] that another process saved into the search
+     * index. Nothing to do for repositories that are the only writer of their messages.
+     */
+    default void indexMessages(int fromId, int toId) {}
+
+    /**
+     * Mark the partner's messages up to the given id as read by the user (never moves back).
+     */
+    void markConversationRead(int userId, int partnerId, int upToMessageId);
 }
 
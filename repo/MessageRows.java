@@ -0,0 +1,69 @@
+package repo;
+
+import domain.Message;
+import domain.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Raw message rows and their conversion to {@link Message} objects, shared by the message
+ * repositories so every backend hydrates users in one batch and resolves replies the same way.
+ */
+final class MessageRows {
+    private MessageRows() {}
+
+    /**
+     * One stored message. {@code wanted} marks rows that belong in the result; the others are
+     * only present so that reply references can be resolved.
+     */
+    record Row(int id, int senderId, Integer[] recipientIds, String text,
+               LocalDateTime createdAt, Integer replyTo, boolean wanted) {}
+
+    /**
+     * Build messages from raw rows using one batched user lookup. Rows must be ordered by id so
+     * that reply targets (always older, hence lower id) are built before the replies pointing at them.
+     * A reply target among the rows is linked directly; any other is left to replyLoader, which
+     * runs only if the reply target is asked for. Only rows flagged as wanted are returned, in
+     * input order.
+     */
+    static List<Message> hydrate(List<Row> rows, UserRepository userRepository, IntFunction<Message> replyLoader) {
+        Set<Integer> userIds = new HashSet<>();
+        for (Row row : rows) {
+            userIds.add(row.senderId());
+            userIds.addAll(Arrays.asList(row.recipientIds()));
+        }
+        Map<Integer, User> users = userRepository.findByIds(userIds);
+        Map<Integer, Message> byId = new HashMap<>();
+        List<Message> result = new ArrayList<>();
+        for (Row row : rows) {
+            User from = users.get(row.senderId());
+            List<User> recipients = new ArrayList<>();
+            for (Integer rid : row.recipientIds()) {
+                User u = users.get(rid);
+                if (u != null) {
+                    recipients.add(u);
+                }
+            }
+            if (from == null || recipients.isEmpty()) {
+                continue; // sender or all recipients were deleted
+            }
+            Message reply = row.replyTo() != null ? byId.get(row.replyTo()) : null;
+            Message m = reply != null || row.replyTo() == null
+                    ? new Message(row.id(), from, recipients, row.text(), row.createdAt(), reply)
+                    : new Message(row.id(), from, recipients, row.text(), row.createdAt(), row.replyTo(), replyLoader);
+            byId.put(row.id(), m);
+            if (row.wanted()) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,271 @@
+package repo;
+
+import util.IntObjectMap;
+import util.PostingList;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Thread-safe in-memory full-text index over message texts.
+ *
+ * Texts are split into lower-case terms with diacritics removed. Each term gets an id from a
+ * sorted dictionary (so prefix queries are a range scan), and postings are kept per
+ * (participant, term) as compressed {@link PostingList}s of message ids, so a user's query only
+ * ever touches messages that user sent or received. A forward index of each message's term ids
+ * (varint-encoded) is kept to check phrase adjacency without the message text.
+ *
+ * Query syntax: words must all occur; {@code word*} matches any term starting with word;
+ * {@code "two words"} must occur as a phrase. Results are message ids, newest (highest id) first.
+ */
+public class MessageSearchIndex {
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Integer> dictionary = new TreeMap<>();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final IntObjectMap<byte[]> forward = new IntObjectMap<>();
+
+    /**
+     * One query clause: consecutive terms (a single word is a phrase of one), or a prefix.
+     */
+    private record Clause(List<String> terms, boolean prefix) {}
+
+    /**
+     * Index a message for its sender and every recipient. Re-indexing an id is ignored.
+     */
+    public void add(int messageId, int senderId, Integer[] recipientIds, String text) {
+        List<String> terms = tokenize(text);
+        lock.writeLock().lock();
+        try {
+            if (forward.containsKey(messageId)) return;
+            int[] termIds = new int[terms.size()];
+            for (int i = 0; i < termIds.length; i++) {
+                termIds[i] = dictionary.computeIfAbsent(terms.get(i), t -> dictionary.size());
+            }
+            forward.put(messageId, encode(termIds));
+            int[] distinct = Arrays.stream(termIds).distinct().toArray();
+            post(senderId, distinct, messageId);
+            for (Integer rid : recipientIds) {
+                if (rid != senderId) post(rid, distinct, messageId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            dictionary.clear();
+            postings.clear();
+            forward.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return number of indexed messages */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return forward.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the user's messages matching the query, newest first.
+     *
+     * @param limit maximum number of ids returned
+     */
+    public int[] search(int userId, String query, int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) return new int[0];
+        lock.readLock().lock();
+        try {
+            List<int[]> candidates = new ArrayList<>(clauses.size());
+            for (Clause clause : clauses) {
+                int[] ids = clause.prefix() ? prefixPostings(userId, clause.terms().get(0)) : termPostings(userId, clause.terms());
+                if (ids.length == 0) return new int[0];
+                candidates.add(ids);
+            }
+            candidates.sort((a, b) -> Integer.compare(a.length, b.length));
+            int[] smallest = candidates.get(0);
+            int[] result = new int[Math.min(limit, smallest.length)];
+            int found = 0;
+            // walk the rarest clause from the newest id down, so we stop after limit hits
+            for (int i = smallest.length - 1; i >= 0 && found < result.length; i--) {
+                int id = smallest[i];
+                if (matches(id, candidates, clauses)) result[found++] = id;
+            }
+            return Arrays.copyOf(result, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean matches(int id, List<int[]> candidates, List<Clause> clauses) {
+        for (int k = 1; k < candidates.size(); k++) {
+            if (Arrays.binarySearch(candidates.get(k), id) < 0) return false;
+        }
+        for (Clause clause : clauses) {
+            if (!clause.prefix() && clause.terms().size() > 1 && !containsPhrase(id, clause.terms())) return false;
+        }
+        return true;
+    }
+
+    /** Ids containing all of the terms (not necessarily adjacent). */
+    private int[] termPostings(int userId, List<String> terms) {
+        int[] result = null;
+        for (String term : terms) {
+            Integer termId = dictionary.get(term);
+            PostingList list = termId == null ? null : postings.get(key(userId, termId));
+            if (list == null) return new int[0];
+            result = result == null ? list.toArray() : intersect(result, list.toArray());
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private int[] prefixPostings(int userId, String prefix) {
+        NavigableMap<String, Integer> range = dictionary.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        int[] result = new int[0];
+        for (int termId : range.values()) {
+            PostingList list = postings.get(key(userId, termId));
+            if (list != null) result = union(result, list.toArray());
+        }
+        return result;
+    }
+
+    private boolean containsPhrase(int messageId, List<String> terms) {
+        int[] phrase = new int[terms.size()];
+        for (int i = 0; i < phrase.length; i++) {
+            Integer termId = dictionary.get(terms.get(i));
+            if (termId == null) return false;
+            phrase[i] = termId;
+        }
+        int[] text = decode(forward.get(messageId));
+        outer:
+        for (int start = 0; start + phrase.length <= text.length; start++) {
+            for (int j = 0; j < phrase.length; j++) {
+                if (text[start + j] != phrase[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void post(int userId, int[] termIds, int messageId) {
+        for (int termId : termIds) {
+            postings.computeIfAbsent(key(userId, termId), k -> new PostingList()).add(messageId);
+        }
+    }
+
+    private static long key(int userId, int termId) {
+        return ((long) userId << 32) | (termId & 0xffffffffL);
+    }
+
+    private static List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        if (query == null) return clauses;
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 1) {
+                // inside quotes
+                List<String> terms = tokenize(parts[i]);
+                if (!terms.isEmpty()) clauses.add(new Clause(terms, false));
+                continue;
+            }
+            for (String word : parts[i].trim().split("\\s+")) {
+                List<String> terms = tokenize(word);
+                for (int t = 0; t < terms.size(); t++) {
+                    // only the last term of "word*" is a prefix ("foo-ba*" is foo AND ba*)
+                    boolean prefix = t == terms.size() - 1 && word.endsWith("*");
+                    clauses.add(new Clause(List.of(terms.get(t)), prefix));
+                }
+            }
+        }
+        return clauses;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        for (String term : SEPARATORS.split(folded)) {
+            if (!term.isEmpty()) terms.add(term);
+        }
+        return terms;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) out[n++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) out[n++] = b[j++];
+            else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static byte[] encode(int[] values) {
+        byte[] out = new byte[values.length * 5];
+        int n = 0;
+        for (int v : values) {
+            while ((v & ~0x7f) != 0) {
+                out[n++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            out[n++] = (byte) v;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] decode(byte[] bytes) {
+        int[] values = new int[bytes.length];
+        int n = 0;
+        for (int p = 0; p < bytes.length; ) {
+            int v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[p++];
+                v |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            values[n++] = v;
+        }
+        return Arrays.copyOf(values, n);
+    }
+}
@@ -0,0 +1,45 @@
+package repo;
+
+import domain.Notification;
+
+import java.util.List;
+
+/**
+ * Persistent per-user notification inboxes.
+ *
+ * Notifications for few recipients are fanned out on write (one inbox row per recipient).
+ * Notifications for more recipients than the implementation's fan-out threshold are stored
+ * once and resolved against the recipients when an inbox is read (fan-out on read).
+ * Read state is a per-user high-water mark: everything up to the last read id is read.
+ */
+public interface NotificationRepository {
+    /**
+     * A notification to deliver to the given users.
+     */
+    record Delivery(int eventId, String message, int[] recipientIds) {}
+
+    /**
+     * Store a batch of notifications and deliver each to its recipients.
+     *
+     * @return the stored notifications, with generated ids, in input order
+     */
+    List<Notification> deliver(List<Delivery> deliveries);
+
+    /**
+     * Newest-first page of a user's inbox.
+     *
+     * @param beforeId only return notifications with a smaller id (null for the newest page)
+     * @param limit    maximum number of items
+     */
+    List<Notification> findInbox(int userId, Integer beforeId, int limit);
+
+    /**
+     * @return number of notifications in the inbox newer than the user's last read id
+     */
+    int countUnread(int userId);
+
+    /**
+     * Mark everything up to (and including) the given id as read. Never moves the mark back.
+     */
+    void markRead(int userId, int upToId);
+}
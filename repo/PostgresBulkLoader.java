@@ -0,0 +1,222 @@
+package repo;
+
+import domain.Duck;
+import domain.Persoana;
+import domain.User;
+import errors.RepoError;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link BulkUserLoader} streaming rows into PostgreSQL with COPY.
+ *
+ * A user batch is one transaction: ids are reserved from the user_base sequence up front, then
+ * user_base, persoana and duck are each filled by a single COPY. Rows whose email already exists
+ * (in the table or earlier in the batch, ignoring case) are rejected before copying; if the COPY
+ * itself fails (e.g. a concurrent insert of the same email) the batch is rolled back and its
+ * halves are retried until the failing rows are isolated and rejected one by one.
+ *
+ * Friendship batches are copied into a temporary staging table and inserted with one
+ * INSERT ... SELECT joined on the lower-cased email, so unknown emails are reported instead of
+ * failing the batch. Both lookups go through the lower(email) index created by
+ * {@link PostgresUserRepository#installSchema()} (resources/db/users.sql).
+ */
+public class PostgresBulkLoader implements BulkUserLoader {
+    private final String url;
+    private final String user;
+    private final String password;
+    Connection c;
+
+    public PostgresBulkLoader(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        try {
+            c = DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            throw new RepoError("DB connection error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<Integer, String> loadUsers(List<User> users) {
+        Map<Integer, String> rejects = new LinkedHashMap<>();
+        Map<String, Integer> byEmail = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            User u = users.get(i);
+            if (!(u instanceof Persoana) && !(u instanceof Duck)) {
+                rejects.put(i, "Unknown user subtype");
+            } else if (byEmail.putIfAbsent(normalize(u.getEmail()), i) != null) {
+                rejects.put(i, "Duplicate email in import: " + u.getEmail());
+            }
+        }
+        if (byEmail.isEmpty()) return rejects;
+        try {
+            for (String existing : existingEmails(byEmail.keySet())) {
+                rejects.put(byEmail.remove(existing), "Email already exists");
+            }
+            if (byEmail.isEmpty()) return rejects;
+
+            List<Integer> indexes = new ArrayList<>(byEmail.values());
+            List<User> accepted = new ArrayList<>(indexes.size());
+            for (int index : indexes) accepted.add(users.get(index));
+            int[] ids = reserveIds(accepted.size());
+            copyUsers(accepted, ids, indexes, 0, accepted.size(), rejects);
+            return rejects;
+        } catch (SQLException e) {
+            throw new RepoError("DB loadUsers error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * COPY users[from, to) in one transaction. If the COPY fails, the range is split in halves
+     * and each half retried, so a conflicting row only rejects itself; a chunk with k bad rows
+     * costs O(k log n) extra copies.
+     */
+    private void copyUsers(List<User> users, int[] ids, List<Integer> indexes, int from, int to,
+                           Map<Integer, String> rejects) throws SQLException {
+        StringBuilder base = new StringBuilder();
+        StringBuilder persoane = new StringBuilder();
+        StringBuilder ducks = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            User u = users.get(i);
+            row(base, ids[i], u.getUsername(), u.getEmail(), u.getPassword());
+            if (u instanceof Persoana p) {
+                row(persoane, ids[i], p.getNume(), p.getPrenume(), p.getOcupatie(), p.getDataNasterii(), p.getNivelEmpatie());
+            } else {
+                Duck d = (Duck) u;
+                row(ducks, ids[i], d.getTipRata().name(), d.getViteza(), d.getRezistenta());
+            }
+        }
+
+        c.setAutoCommit(false);
+        try {
+            CopyManager copy = c.unwrap(PGConnection.class).getCopyAPI();
+            copy.copyIn("COPY user_base(id, username, email, password) FROM STDIN WITH (FORMAT csv)", new StringReader(base.toString()));
+            if (persoane.length() > 0) {
+                copy.copyIn("COPY persoana(id, nume, prenume, ocupatie, data_nasterii, nivel_empatie) FROM STDIN WITH (FORMAT csv)",
+                        new StringReader(persoane.toString()));
+            }
+            if (ducks.length() > 0) {
+                copy.copyIn("COPY duck(id, tip_rata, viteza, rezistenta) FROM STDIN WITH (FORMAT csv)", new StringReader(ducks.toString()));
+            }
+            c.commit();
+        } catch (SQLException | IOException e) {
+            c.rollback();
+            if (to - from == 1) {
+                rejects.put(indexes.get(from), "Row rejected: " + e.getMessage());
+            } else {
+                int mid = (from + to) >>> 1;
+                copyUsers(users, ids, indexes, from, mid, rejects);
+                copyUsers(users, ids, indexes, mid, to, rejects);
+            }
+            return;
+        } finally {
+            c.setAutoCommit(true);
+        }
+        for (int i = from; i < to; i++) users.get(i).setId(ids[i]);
+    }
+
+    @Override
+    public Map<Integer, String> loadFriendships(List<String[]> emailPairs) {
+        Map<Integer, String> rejects = new LinkedHashMap<>();
+        StringBuilder staged = new StringBuilder();
+        for (int i = 0; i < emailPairs.size(); i++) {
+            String[] pair = emailPairs.get(i);
+            String a = normalize(pair[0]);
+            String b = normalize(pair[1]);
+            if (a.equals(b)) {
+                rejects.put(i, "Cannot friend self");
+            } else {
+                row(staged, i, a, b);
+            }
+        }
+        if (staged.length() == 0) return rejects;
+        String unknown = "SELECT f.idx FROM import_friend f "
+                + "LEFT JOIN user_base a ON lower(a.email) = f.email_a "
+                + "LEFT JOIN user_base b ON lower(b.email) = f.email_b "
+                + "WHERE a.id IS NULL OR b.id IS NULL";
+        String insert = "INSERT INTO user_friend(user_id, friend_id) "
+                + "SELECT DISTINCT LEAST(a.id, b.id), GREATEST(a.id, b.id) FROM import_friend f "
+                + "JOIN user_base a ON lower(a.email) = f.email_a "
+                + "JOIN user_base b ON lower(b.email) = f.email_b "
+                + "ON CONFLICT DO NOTHING";
+        try {
+            c.setAutoCommit(false);
+            try (Statement st = c.createStatement()) {
+                st.execute("CREATE TEMP TABLE IF NOT EXISTS import_friend(idx int, email_a text, email_b text) ON COMMIT DELETE ROWS");
+                c.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn("COPY import_friend(idx, email_a, email_b) FROM STDIN WITH (FORMAT csv)", new StringReader(staged.toString()));
+                try (ResultSet rs = st.executeQuery(unknown)) {
+                    while (rs.next()) rejects.put(rs.getInt(1), "Unknown user email");
+                }
+                st.executeUpdate(insert);
+                c.commit();
+            } catch (SQLException | IOException e) {
+                c.rollback();
+                throw new RepoError("DB loadFriendships error: " + e.getMessage());
+            } finally {
+                c.setAutoCommit(true);
+            }
+            return rejects;
+        } catch (SQLException e) {
+            throw new RepoError("DB loadFriendships error: " + e.getMessage());
+        }
+    }
+
+    private Set<String> existingEmails(Set<String> emails) throws SQLException {
+        Set<String> found = new HashSet<>();
+        try (PreparedStatement ps = c.prepareStatement("SELECT lower(email) FROM user_base WHERE lower(email) = ANY(?)")) {
+            ps.setArray(1, c.createArrayOf("text", emails.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(rs.getString(1));
+            }
+        }
+        return found;
+    }
+
+    /** Emails are compared trimmed and case-insensitively; rows stored before may be mixed-case. */
+    private static String normalize(String email) {
+        return email.trim().toLowerCase();
+    }
+
+    private int[] reserveIds(int count) throws SQLException {
+        int[] ids = new int[count];
+        String sql = "SELECT nextval(pg_get_serial_sequence('user_base', 'id')) FROM generate_series(1, ?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, count);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (int i = 0; i < count && rs.next(); i++) ids[i] = rs.getInt(1);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Append one COPY csv line. Nulls are written unquoted-empty (NULL in csv mode), strings are
+     * always quoted so an empty string stays an empty string.
+     */
+    private static void row(StringBuilder out, Object... fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) out.append(',');
+            Object f = fields[i];
+            if (f == null) continue;
+            if (f instanceof String s) {
+                out.append('"').append(s.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(f);
+            }
+        }
+        out.append('\n');
+    }
+}
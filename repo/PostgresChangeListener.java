@@ -0,0 +1,158 @@
+package repo;
+
+import errors.RepoError;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Background listener for the {@code network_changes} channel fed by the triggers in
+ * {@code resources/db/change_feed.sql}. The triggers send one notification per statement,
+ * listing every changed row (or a single {@link #RESET} for large statements); each entry is
+ * parsed into a {@link Change} and handed to every registered handler on the listener thread,
+ * so handlers must be thread-safe and quick. The listener owns a dedicated connection and reconnects after errors.
+ * Notifications for writes made by this instance arrive as well; invalidation is idempotent.
+ */
+public class PostgresChangeListener implements AutoCloseable {
+    public static final String CHANNEL = "network_changes";
+    /**
+     * Entity name of the change sent after a reconnect, when notifications may have been missed,
+     * and by the triggers for statements touching too many rows to list.
+     */
+    public static final String RESET = "reset";
+    private static final int POLL_TIMEOUT_MS = 500;
+    private static final long RECONNECT_DELAY_MS = 2_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<Consumer<Change>> handlers = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * A row-level change. {@code otherId} is -1 for single-key entities (user, inbox, broadcast, results).
+     *
+     * @param entity one of user, friend, card, event, inbox, broadcast, results, messages
+     *               (or {@link #RESET})
+     * @param id     user id, first friend id, card id, event id, recipient id, broadcast event id,
+     *               race id or lowest message id
+     * @param otherId second friend id, duck id, subscriber id or highest message id
+     */
+    public record Change(String entity, int id, int otherId) {
+        static Change parse(String payload) {
+            if (payload == null) return null;
+            String[] parts = payload.split(":");
+            if (parts.length < 2) return null;
+            try {
+                int id = Integer.parseInt(parts[1]);
+                int other = parts.length > 2 ? Integer.parseInt(parts[2]) : -1;
+                return new Change(parts[0], id, other);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    public PostgresChangeListener(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public void addHandler(Consumer<Change> handler) {
+        handlers.add(handler);
+    }
+
+    /**
+     * Run {@code db/change_feed.sql} from the classpath to (re)create the notify triggers.
+     */
+    public void installTriggers() {
+        String script;
+        try (InputStream in = PostgresChangeListener.class.getResourceAsStream("/db/change_feed.sql")) {
+            if (in == null) throw new RepoError("change_feed.sql not found on classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepoError("Cannot read change_feed.sql: " + e.getMessage());
+        }
+        try (Connection c = DriverManager.getConnection(url, user, password);
+             Statement st = c.createStatement()) {
+            st.execute(script);
+        } catch (SQLException e) {
+            throw new RepoError("DB installTriggers error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start the daemon listener thread (no-op if already running).
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::loop, "pg-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void loop() {
+        boolean reconnect = false;
+        while (running) {
+            try (Connection c = DriverManager.getConnection(url, user, password)) {
+                try (Statement st = c.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnect) {
+                    dispatch(new Change(RESET, -1, -1));
+                }
+                reconnect = true;
+                PGConnection pg = c.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) continue;
+                    for (PGNotification n : notifications) {
+                        String payload = n.getParameter();
+                        if (payload == null) continue;
+                        for (String entry : payload.split(";")) {
+                            dispatch(Change.parse(entry));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                System.out.println("Change listener error: " + e.getMessage() + ", reconnecting");
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(Change change) {
+        if (change == null) return;
+        for (Consumer<Change> handler : handlers) {
+            try {
+                handler.accept(change);
+            } catch (RuntimeException e) {
+                System.out.println("Change handler failed for " + change + ": " + e.getMessage());
+            }
+        }
+    }
+}
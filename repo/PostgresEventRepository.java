@@ -213,6 +213,7 @@ public class PostgresEventRepository implements EventRepository {
         }
     }
 
+    @Override
     public void addSubscriber(int eventId, int userId) {
         String sql = "INSERT INTO event_subscribers(event_id, user_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
         try (PreparedStatement ps = c.prepareStatement(sql)) {
@@ -224,6 +225,7 @@ public class PostgresEventRepository implements EventRepository {
         }
     }
 
+    @Override
     public void removeSubscriber(int eventId, int userId) {
         String sql = "DELETE FROM event_subscribers WHERE event_id = ? AND user_id = ?";
         try (PreparedStatement ps = c.prepareStatement(sql)) {
@@ -235,6 +237,7 @@ public class PostgresEventRepository implements EventRepository {
         }
     }
 
+    @Override
     public void addNotification(int eventId, String message) {
         String sql = "INSERT INTO event_notifications(event_id, message) VALUES (?, ?)";
         try (PreparedStatement ps = c.prepareStatement(sql)) {
@@ -245,4 +248,18 @@ public class PostgresEventRepository implements EventRepository {
             throw new RepoError("DB addNotification error: " + e.getMessage());
         }
     }
+
+    @Override
+    public void addNotifications(int eventId, List<String> messages) {
+        if (messages.isEmpty()) return;
+        String sql = "INSERT INTO event_notifications(event_id, message) "
+                + "SELECT ?, m FROM unnest(?::text[]) WITH ORDINALITY AS t(m, ord) ORDER BY ord";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, eventId);
+            ps.setArray(2, c.createArrayOf("text", messages.toArray()));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB addNotifications error: " + e.getMessage());
+        }
+    }
 }
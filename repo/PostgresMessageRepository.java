@@ -1,17 +1,31 @@
 package repo;
 
+import domain.ConversationSummary;
 import domain.Message;
 import domain.User;
 import errors.RepoError;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
 /**
  * JDBC repository for messages.
+ *
+ * Full-text search is served by an in-process {@link MessageSearchIndex}: it is built with one
+ * streaming scan of the messages table when the repository is created and then kept up to date
+ * by every save, so searches never run LIKE over the table. Messages saved by other instances
+ * arrive through {@link #indexMessages(int, int)}, driven by the change feed.
+ *
+ * All methods share one connection and saveAll (called from the {@code MessageIngest} writer
+ * thread) runs a manual transaction on it, so every method that touches the connection is
+ * synchronized; otherwise a UI-thread query could run inside, or abort, a batch transaction.
  */
 public class PostgresMessageRepository implements MessageRepository {
     private final String url;
@@ -19,6 +33,7 @@ public class PostgresMessageRepository implements MessageRepository {
     private final String password;
     private final UserRepository userRepository;
     private Connection connection;
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();
 
     public PostgresMessageRepository(String url, String user, String password, UserRepository userRepository) {
         this.url = url;
@@ -30,46 +45,79 @@ public class PostgresMessageRepository implements MessageRepository {
         } catch (SQLException e) {
             throw new RepoError("DB connection error: " + e.getMessage());
         }
+        rebuildSearchIndex();
     }
 
+    /**
+     * Re-create the search index from the messages table, streamed in fetch-size chunks so the
+     * whole table is never held in memory.
+     */
+    public synchronized void rebuildSearchIndex() {
+        searchIndex.clear();
+        indexRows(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Index the stored messages with an id in [fromId, toId] that the search index does not have
+     * yet, e.g. messages saved by another instance.
+     */
     @Override
-    public Message findOne(Integer id) {
-        if (id == null) {
-            throw new IllegalArgumentException("id null");
-        }
-        String sql = "SELECT sender_id, text, created_at, reply_to FROM messages WHERE id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    return null;
+    public synchronized void indexMessages(int fromId, int toId) {
+        indexRows(fromId, toId);
+    }
+
+    private void indexRows(int fromId, int toId) {
+        String sql = "SELECT m.id, m.sender_id, m.text, " +
+                "(SELECT array_agg(mr.recipient_id) FROM message_recipients mr WHERE mr.message_id = m.id) AS recipients " +
+                "FROM messages m WHERE m.id BETWEEN ? AND ?";
+        try {
+            // the driver only streams with a cursor, which needs a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setInt(1, fromId);
+                ps.setInt(2, toId);
+                ps.setFetchSize(1_000);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Array recipientArray = rs.getArray("recipients");
+                        Integer[] recipients = recipientArray != null ? (Integer[]) recipientArray.getArray() : new Integer[0];
+                        searchIndex.add(rs.getInt("id"), rs.getInt("sender_id"), recipients, rs.getString("text"));
+                    }
                 }
-                User from = userRepository.findOne(rs.getInt("sender_id"));
-                List<User> recipients = loadRecipients(id);
-                Message reply = rs.getObject("reply_to") != null ? findOne(rs.getInt("reply_to")) : null;
-                return new Message(id, from, recipients, rs.getString("text"),
-                        rs.getTimestamp("created_at").toLocalDateTime(), reply);
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            throw new RepoError("DB findOne error: " + e.getMessage());
+            throw new RepoError("DB search index error: " + e.getMessage());
         }
     }
 
-    private List<User> loadRecipients(int messageId) throws SQLException {
-        String sql = "SELECT recipient_id FROM message_recipients WHERE message_id = ?";
-        List<User> recipients = new ArrayList<>();
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setInt(1, messageId);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    User u = userRepository.findOne(rs.getInt("recipient_id"));
-                    if (u != null) {
-                        recipients.add(u);
-                    }
-                }
-            }
+    /**
+     * Create the read-mark table and inbox indexes if missing (runs resources/db/messages.sql).
+     */
+    public synchronized void installSchema() {
+        String script;
+        try (InputStream in = PostgresMessageRepository.class.getResourceAsStream("/db/messages.sql")) {
+            if (in == null) throw new RepoError("messages.sql not found on classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepoError("Cannot read messages.sql: " + e.getMessage());
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute(script);
+        } catch (SQLException e) {
+            throw new RepoError("DB installSchema error: " + e.getMessage());
         }
-        return recipients;
+    }
+
+    @Override
+    public synchronized Message findOne(Integer id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id null");
+        }
+        List<Message> found = loadMessages("SELECT ?::int AS id", id);
+        return found.isEmpty() ? null : found.get(0);
     }
 
     @Override
@@ -77,30 +125,45 @@ public class PostgresMessageRepository implements MessageRepository {
         throw new UnsupportedOperationException("Use conversation queries");
     }
 
+    /**
+     * The message and its recipients are written in one transaction, so other instances never
+     * see (or index) a message with only part of its recipients.
+     */
     @Override
-    public Message save(Message entity) {
+    public synchronized Message save(Message entity) {
         if (entity == null) throw new IllegalArgumentException("message null");
         String sql = "INSERT INTO messages(sender_id, text, created_at, reply_to) VALUES(?,?,?,?) RETURNING id";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setInt(1, entity.getFrom().getId());
-            ps.setString(2, entity.getMessage());
-            ps.setTimestamp(3, Timestamp.valueOf(entity.getCreatedAt()));
-            if (entity.getReplyTo() != null) {
-                ps.setInt(4, entity.getReplyTo().getId());
-            } else {
-                ps.setNull(4, Types.INTEGER);
-            }
-            try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    throw new RepoError("Failed to save message");
+        int id;
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setInt(1, entity.getFrom().getId());
+                ps.setString(2, entity.getMessage());
+                ps.setTimestamp(3, Timestamp.valueOf(entity.getCreatedAt()));
+                if (entity.getReplyToId() != null) {
+                    ps.setInt(4, entity.getReplyToId());
+                } else {
+                    ps.setNull(4, Types.INTEGER);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new RepoError("Failed to save message");
+                    }
+                    id = rs.getInt(1);
                 }
-                int id = rs.getInt(1);
                 insertRecipients(id, entity.getTo());
-                return new Message(id, entity.getFrom(), entity.getTo(), entity.getMessage(), entity.getCreatedAt(), entity.getReplyTo());
+                connection.commit();
+            } catch (SQLException | RepoError e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             throw new RepoError("DB save error: " + e.getMessage());
         }
+        searchIndex.add(id, entity.getFrom().getId(), recipientIds(entity), entity.getMessage());
+        return entity.withId(id);
     }
 
     @Override
@@ -109,43 +172,242 @@ public class PostgresMessageRepository implements MessageRepository {
     }
 
     @Override
-    public List<Message> findConversation(int userId, int otherUserId) {
-        String sql = "SELECT m.id, m.sender_id, m.text, m.created_at, m.reply_to " +
-                "FROM messages m " +
-                "JOIN message_recipients r ON m.id = r.message_id " +
-                "WHERE (m.sender_id = ? AND r.recipient_id = ?) OR (m.sender_id = ? AND r.recipient_id = ?) " +
-                "ORDER BY m.created_at";
+    public synchronized List<Message> findConversation(int userId, int otherUserId) {
+        List<Message> messages = loadConversation(userId, otherUserId, "");
+        messages.sort(Comparator.comparing(Message::getCreatedAt).thenComparingInt(Message::getId));
+        return messages;
+    }
+
+    @Override
+    public synchronized List<Message> findConversationSince(int userId, int otherUserId, int afterId) {
+        return loadConversation(userId, otherUserId, " AND m.id > ?", afterId);
+    }
+
+    @Override
+    public synchronized List<Message> findConversationBefore(int userId, int otherUserId, Integer beforeId, int limit) {
+        if (limit <= 0) throw new RepoError("Invalid pagination arguments");
+        int before = beforeId == null ? Integer.MAX_VALUE : beforeId;
+        return loadConversation(userId, otherUserId, " AND m.id < ? ORDER BY m.id DESC LIMIT ?", before, limit);
+    }
+
+    @Override
+    public synchronized List<Message> findThread(int messageId) {
+        // walk reply_to upwards in one recursive query instead of one findOne per level
+        return loadMessages("SELECT id, reply_to FROM messages WHERE id = ? " +
+                "UNION ALL SELECT p.id, p.reply_to FROM messages p JOIN wanted w ON p.id = w.reply_to", messageId);
+    }
+
+    /**
+     * One round trip: the conversation messages matching the extra clause, recipients
+     * aggregated per row. Result is in id order.
+     *
+     * @param extraClause appended to the conversation filter; its parameters follow in extraParams
+     */
+    private List<Message> loadConversation(int userId, int otherUserId, String extraClause, int... extraParams) {
+        String conv = "SELECT m.id FROM messages m WHERE EXISTS (SELECT 1 FROM message_recipients r WHERE r.message_id = m.id " +
+                "AND ((m.sender_id = ? AND r.recipient_id = ?) OR (m.sender_id = ? AND r.recipient_id = ?)))" + extraClause;
+        Object[] params = new Object[4 + extraParams.length];
+        params[0] = userId;
+        params[1] = otherUserId;
+        params[2] = otherUserId;
+        params[3] = userId;
+        for (int i = 0; i < extraParams.length; i++) params[4 + i] = extraParams[i];
+        return loadMessages(conv, params);
+    }
+
+    /**
+     * Messages whose ids the given query selects (as CTE "wanted", which may be recursive), in
+     * id order. Reply targets that are not among them are resolved lazily through findOne.
+     */
+    private List<Message> loadMessages(String wantedIdsQuery, Object... params) {
+        String sql = "WITH RECURSIVE wanted AS (" + wantedIdsQuery + ") " +
+                "SELECT m.id, m.sender_id, m.text, m.created_at, m.reply_to, " +
+                "(SELECT array_agg(mr.recipient_id) FROM message_recipients mr WHERE mr.message_id = m.id) AS recipients " +
+                "FROM messages m WHERE m.id IN (SELECT id FROM wanted) ORDER BY m.id";
+        List<MessageRows.Row> rows = new ArrayList<>();
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setInt(1, userId);
-            ps.setInt(2, otherUserId);
-            ps.setInt(3, otherUserId);
-            ps.setInt(4, userId);
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(readRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB message query error: " + e.getMessage());
+        }
+        return MessageRows.hydrate(rows, userRepository, this::findOne);
+    }
+
+    private record Head(int partnerId, int id, int senderId, String text, LocalDateTime at, int unread) {}
+
+    @Override
+    public synchronized List<ConversationSummary> findInboxSummary(int userId) {
+        // every (message, partner) edge of the user, then the newest per partner via DISTINCT ON
+        String sql = "WITH edges AS (" +
+                "SELECT m.id, m.sender_id, m.text, m.created_at, r.recipient_id AS partner_id " +
+                "FROM messages m JOIN message_recipients r ON r.message_id = m.id WHERE m.sender_id = ? " +
+                "UNION ALL " +
+                "SELECT m.id, m.sender_id, m.text, m.created_at, m.sender_id AS partner_id " +
+                "FROM messages m JOIN message_recipients r ON r.message_id = m.id WHERE r.recipient_id = ?), " +
+                "heads AS (SELECT DISTINCT ON (partner_id) partner_id, id, sender_id, text, created_at " +
+                "FROM edges WHERE partner_id <> ? ORDER BY partner_id, id DESC) " +
+                "SELECT h.partner_id, h.id, h.sender_id, h.text, h.created_at, " +
+                "(SELECT count(*) FROM messages m JOIN message_recipients r ON r.message_id = m.id " +
+                " WHERE r.recipient_id = ? AND m.sender_id = h.partner_id AND m.id > COALESCE(cr.last_read_id, 0)) AS unread " +
+                "FROM heads h LEFT JOIN conversation_reads cr ON cr.user_id = ? AND cr.partner_id = h.partner_id " +
+                "ORDER BY h.id DESC";
+        List<Head> heads = new ArrayList<>();
+        List<Integer> partnerIds = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 1; i <= 5; i++) ps.setInt(i, userId);
             try (ResultSet rs = ps.executeQuery()) {
-                List<Message> messages = new ArrayList<>();
-                Map<Integer, Message> cache = new HashMap<>();
                 while (rs.next()) {
-                    int id = rs.getInt("id");
-                    User from = userRepository.findOne(rs.getInt("sender_id"));
-                    List<User> recipients = loadRecipients(id);
-                    Integer replyToId = rs.getObject("reply_to") != null ? rs.getInt("reply_to") : null;
-                    Message reply = replyToId != null ? cache.computeIfAbsent(replyToId, this::findOne) : null;
-                    Message m = new Message(id, from, recipients, rs.getString("text"),
-                            rs.getTimestamp("created_at").toLocalDateTime(), reply);
-                    cache.put(id, m);
-                    messages.add(m);
+                    partnerIds.add(rs.getInt("partner_id"));
+                    heads.add(new Head(rs.getInt("partner_id"), rs.getInt("id"), rs.getInt("sender_id"),
+                            rs.getString("text"), rs.getTimestamp("created_at").toLocalDateTime(), rs.getInt("unread")));
                 }
-                return messages;
             }
         } catch (SQLException e) {
-            throw new RepoError("DB conversation error: " + e.getMessage());
+            throw new RepoError("DB inbox summary error: " + e.getMessage());
+        }
+        Map<Integer, User> partners = userRepository.findByIds(partnerIds);
+        List<ConversationSummary> result = new ArrayList<>(heads.size());
+        for (Head h : heads) {
+            User partner = partners.get(h.partnerId());
+            if (partner == null) continue;
+            result.add(new ConversationSummary(partner, h.id(), h.senderId(), h.text(), h.at(), h.unread()));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void markConversationRead(int userId, int partnerId, int upToMessageId) {
+        String sql = "INSERT INTO conversation_reads(user_id, partner_id, last_read_id) VALUES (?, ?, ?) " +
+                "ON CONFLICT (user_id, partner_id) DO UPDATE " +
+                "SET last_read_id = GREATEST(conversation_reads.last_read_id, EXCLUDED.last_read_id)";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, partnerId);
+            ps.setInt(3, upToMessageId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB markConversationRead error: " + e.getMessage());
         }
     }
 
+    private MessageRows.Row readRow(ResultSet rs) throws SQLException {
+        Array recipientArray = rs.getArray("recipients");
+        Integer[] recipients = recipientArray != null ? (Integer[]) recipientArray.getArray() : new Integer[0];
+        Integer replyTo = rs.getObject("reply_to") != null ? rs.getInt("reply_to") : null;
+        return new MessageRows.Row(rs.getInt("id"), rs.getInt("sender_id"), recipients, rs.getString("text"),
+                rs.getTimestamp("created_at").toLocalDateTime(), replyTo, true);
+    }
+
     @Override
-    public Message saveReply(Message reply) {
+    public synchronized Message saveReply(Message reply) {
         return save(reply);
     }
 
+    /**
+     * Batch insert: ids are reserved up front, then messages and recipients are written with one
+     * multi-row INSERT each, in a single transaction.
+     */
+    @Override
+    public synchronized List<Message> saveAll(List<Message> batch) {
+        List<Message> saved = new ArrayList<>(batch.size());
+        if (batch.isEmpty()) return saved;
+        int n = batch.size();
+        Integer[] ids = new Integer[n];
+        Integer[] senders = new Integer[n];
+        String[] texts = new String[n];
+        Timestamp[] createdAt = new Timestamp[n];
+        Integer[] replyTo = new Integer[n];
+        List<Integer> recipientMessages = new ArrayList<>();
+        List<Integer> recipientUsers = new ArrayList<>();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                reserveIds(ids);
+                for (int i = 0; i < n; i++) {
+                    Message m = batch.get(i);
+                    senders[i] = m.getFrom().getId();
+                    texts[i] = m.getMessage();
+                    createdAt[i] = Timestamp.valueOf(m.getCreatedAt());
+                    replyTo[i] = m.getReplyToId();
+                    for (User to : m.getTo()) {
+                        recipientMessages.add(ids[i]);
+                        recipientUsers.add(to.getId());
+                    }
+                }
+                String insert = "INSERT INTO messages(id, sender_id, text, created_at, reply_to) "
+                        + "SELECT * FROM unnest(?::int[], ?::int[], ?::text[], ?::timestamp[], ?::int[])";
+                try (PreparedStatement ps = connection.prepareStatement(insert)) {
+                    ps.setArray(1, connection.createArrayOf("integer", ids));
+                    ps.setArray(2, connection.createArrayOf("integer", senders));
+                    ps.setArray(3, connection.createArrayOf("text", texts));
+                    ps.setArray(4, connection.createArrayOf("timestamp", createdAt));
+                    ps.setArray(5, connection.createArrayOf("integer", replyTo));
+                    ps.executeUpdate();
+                }
+                if (!recipientMessages.isEmpty()) {
+                    String recipients = "INSERT INTO message_recipients(message_id, recipient_id) "
+                            + "SELECT * FROM unnest(?::int[], ?::int[])";
+                    try (PreparedStatement ps = connection.prepareStatement(recipients)) {
+                        ps.setArray(1, connection.createArrayOf("integer", recipientMessages.toArray()));
+                        ps.setArray(2, connection.createArrayOf("integer", recipientUsers.toArray()));
+                        ps.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB saveAll error: " + e.getMessage());
+        }
+        for (int i = 0; i < n; i++) {
+            Message m = batch.get(i);
+            saved.add(m.withId(ids[i]));
+            searchIndex.add(ids[i], senders[i], recipientIds(m), texts[i]);
+        }
+        return saved;
+    }
+
+    @Override
+    public synchronized List<Message> search(int userId, String query, int limit) {
+        int[] ids = searchIndex.search(userId, query, limit);
+        if (ids.length == 0) return new ArrayList<>();
+        Integer[] boxed = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) boxed[i] = ids[i];
+        List<Message> messages;
+        try {
+            messages = loadMessages("SELECT unnest(?::int[]) AS id", connection.createArrayOf("integer", boxed));
+        } catch (SQLException e) {
+            throw new RepoError("DB search error: " + e.getMessage());
+        }
+        messages.sort(Comparator.comparingInt(Message::getId).reversed());
+        return messages;
+    }
+
+    private static Integer[] recipientIds(Message m) {
+        return m.getTo().stream().map(User::getId).toArray(Integer[]::new);
+    }
+
+    private void reserveIds(Integer[] ids) throws SQLException {
+        String sql = "SELECT nextval(pg_get_serial_sequence('messages', 'id')) FROM generate_series(1, ?)";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, ids.length);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (int i = 0; i < ids.length && rs.next(); i++) ids[i] = rs.getInt(1);
+            }
+        }
+    }
+
     private void insertRecipients(int messageId, List<User> recipients) throws SQLException {
         String sql = "INSERT INTO message_recipients(message_id, recipient_id) VALUES(?,?)";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
@@ -0,0 +1,223 @@
+package repo;
+
+import domain.Notification;
+import errors.RepoError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC {@link NotificationRepository} over the tables of resources/db/notifications.sql:
+ *   notifications(id, event_id, message, created_at, broadcast)
+ *   user_notifications(user_id, notification_id) inbox rows for fanned-out notifications
+ *   user_inbox_state(user_id, last_read_id) read high-water mark
+ *
+ * A delivery with more recipients than the fan-out threshold is stored with broadcast = true and
+ * no inbox rows; inbox reads pick it up through event_subscribers, limited to subscriptions older
+ * than the notification (created_at and subscribed_at both come from the database clock). The
+ * schema's delete trigger copies received broadcasts into user_notifications on unsubscribe.
+ * Inbox pages are keyset pages on the notification id, newest first.
+ *
+ * All methods share one connection and deliver runs a manual transaction on it, so every method
+ * is synchronized.
+ */
+public class PostgresNotificationRepository implements NotificationRepository {
+    public static final int DEFAULT_FANOUT_THRESHOLD = 1_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int fanoutThreshold;
+    Connection c;
+
+    public PostgresNotificationRepository(String url, String user, String password) {
+        this(url, user, password, DEFAULT_FANOUT_THRESHOLD);
+    }
+
+    /**
+     * @param fanoutThreshold deliveries to more recipients than this are fanned out on read
+     */
+    public PostgresNotificationRepository(String url, String user, String password, int fanoutThreshold) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.fanoutThreshold = fanoutThreshold;
+        try {
+            c = DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            throw new RepoError("DB connection error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the inbox tables if missing (runs resources/db/notifications.sql).
+     */
+    public void installSchema() {
+        String script;
+        try (InputStream in = PostgresNotificationRepository.class.getResourceAsStream("/db/notifications.sql")) {
+            if (in == null) throw new RepoError("notifications.sql not found on classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepoError("Cannot read notifications.sql: " + e.getMessage());
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute(script);
+        } catch (SQLException e) {
+            throw new RepoError("DB installSchema error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<Notification> deliver(List<Delivery> deliveries) {
+        List<Notification> stored = new ArrayList<>(deliveries.size());
+        if (deliveries.isEmpty()) return stored;
+        int n = deliveries.size();
+        Integer[] ids = new Integer[n];
+        Integer[] eventIds = new Integer[n];
+        String[] messages = new String[n];
+        Boolean[] broadcast = new Boolean[n];
+        Timestamp now;
+        List<Integer> inboxUsers = new ArrayList<>();
+        List<Integer> inboxNotifications = new ArrayList<>();
+        try {
+            c.setAutoCommit(false);
+            try {
+                reserveIds(ids);
+                now = transactionTime();
+                for (int i = 0; i < n; i++) {
+                    Delivery d = deliveries.get(i);
+                    eventIds[i] = d.eventId();
+                    messages[i] = d.message();
+                    broadcast[i] = d.recipientIds().length > fanoutThreshold;
+                    if (!broadcast[i]) {
+                        for (int uid : d.recipientIds()) {
+                            inboxUsers.add(uid);
+                            inboxNotifications.add(ids[i]);
+                        }
+                    }
+                }
+                String insert = "INSERT INTO notifications(id, event_id, message, created_at, broadcast) "
+                        + "SELECT t.id, t.event_id, t.message, ?, t.broadcast "
+                        + "FROM unnest(?::int[], ?::int[], ?::text[], ?::boolean[]) AS t(id, event_id, message, broadcast)";
+                try (PreparedStatement ps = c.prepareStatement(insert)) {
+                    ps.setTimestamp(1, now);
+                    ps.setArray(2, c.createArrayOf("integer", ids));
+                    ps.setArray(3, c.createArrayOf("integer", eventIds));
+                    ps.setArray(4, c.createArrayOf("text", messages));
+                    ps.setArray(5, c.createArrayOf("boolean", broadcast));
+                    ps.executeUpdate();
+                }
+                if (!inboxUsers.isEmpty()) {
+                    String fanout = "INSERT INTO user_notifications(user_id, notification_id) "
+                            + "SELECT * FROM unnest(?::int[], ?::int[]) ON CONFLICT DO NOTHING";
+                    try (PreparedStatement ps = c.prepareStatement(fanout)) {
+                        ps.setArray(1, c.createArrayOf("integer", inboxUsers.toArray()));
+                        ps.setArray(2, c.createArrayOf("integer", inboxNotifications.toArray()));
+                        ps.executeUpdate();
+                    }
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB deliver error: " + e.getMessage());
+        }
+        for (int i = 0; i < n; i++) {
+            stored.add(new Notification(ids[i], eventIds[i], messages[i], now.toLocalDateTime()));
+        }
+        return stored;
+    }
+
+    @Override
+    public synchronized List<Notification> findInbox(int userId, Integer beforeId, int limit) {
+        if (limit <= 0) throw new RepoError("Invalid pagination arguments");
+        int before = beforeId == null ? Integer.MAX_VALUE : beforeId;
+        // each branch is limited on its own so both can walk their index backwards
+        String sql = "(SELECT n.id, n.event_id, n.message, n.created_at FROM notifications n "
+                + "JOIN user_notifications un ON un.notification_id = n.id "
+                + "WHERE un.user_id = ? AND n.id < ? ORDER BY n.id DESC LIMIT ?) "
+                + "UNION ALL "
+                + "(SELECT n.id, n.event_id, n.message, n.created_at FROM notifications n "
+                + "JOIN event_subscribers es ON es.event_id = n.event_id "
+                + "WHERE es.user_id = ? AND n.broadcast AND n.created_at >= es.subscribed_at AND n.id < ? "
+                + "ORDER BY n.id DESC LIMIT ?) "
+                + "ORDER BY id DESC LIMIT ?";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, before);
+            ps.setInt(3, limit);
+            ps.setInt(4, userId);
+            ps.setInt(5, before);
+            ps.setInt(6, limit);
+            ps.setInt(7, limit);
+            List<Notification> result = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new Notification(rs.getInt("id"), rs.getInt("event_id"), rs.getString("message"),
+                            rs.getTimestamp("created_at").toLocalDateTime()));
+                }
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new RepoError("DB findInbox error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized int countUnread(int userId) {
+        String sql = "WITH mark AS (SELECT COALESCE((SELECT last_read_id FROM user_inbox_state WHERE user_id = ?), 0) AS id) "
+                + "SELECT (SELECT count(*) FROM user_notifications un, mark "
+                + "        WHERE un.user_id = ? AND un.notification_id > mark.id) "
+                + "     + (SELECT count(*) FROM notifications n JOIN event_subscribers es ON es.event_id = n.event_id, mark "
+                + "        WHERE es.user_id = ? AND n.broadcast AND n.created_at >= es.subscribed_at AND n.id > mark.id)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, userId);
+            ps.setInt(3, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB countUnread error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void markRead(int userId, int upToId) {
+        String sql = "INSERT INTO user_inbox_state(user_id, last_read_id) VALUES (?, ?) "
+                + "ON CONFLICT (user_id) DO UPDATE SET last_read_id = GREATEST(user_inbox_state.last_read_id, EXCLUDED.last_read_id)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, userId);
+            ps.setInt(2, upToId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB markRead error: " + e.getMessage());
+        }
+    }
+
+    /** Start time of the current transaction, the same clock as subscribed_at's default. */
+    private Timestamp transactionTime() throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery("SELECT localtimestamp")) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private void reserveIds(Integer[] ids) throws SQLException {
+        String sql = "SELECT nextval(pg_get_serial_sequence('notifications', 'id')) FROM generate_series(1, ?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, ids.length);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (int i = 0; i < ids.length && rs.next(); i++) ids[i] = rs.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package repo;
+
+import domain.RaceResult;
+import errors.RepoError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * JDBC {@link RaceResultRepository} over the race_results table of resources/db/race_results.sql:
+ *   race_results(id, race_id, lane, duck_id, time, round, heat)
+ *
+ * A batch is inserted with one statement over unnested arrays. Positions are row ids, so
+ * they follow insert order but can commit out of order and have gaps (rolled-back inserts).
+ */
+public class PostgresRaceResultRepository implements RaceResultRepository {
+    private final String url;
+    private final String user;
+    private final String password;
+    Connection c;
+
+    public PostgresRaceResultRepository(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        try {
+            c = DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            throw new RepoError("DB connection error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the results table if missing (runs resources/db/race_results.sql).
+     */
+    public void installSchema() {
+        String script;
+        try (InputStream in = PostgresRaceResultRepository.class.getResourceAsStream("/db/race_results.sql")) {
+            if (in == null) throw new RepoError("race_results.sql not found on classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepoError("Cannot read race_results.sql: " + e.getMessage());
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute(script);
+        } catch (SQLException e) {
+            throw new RepoError("DB installSchema error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void saveAll(List<RaceResult> results) {
+        if (results.isEmpty()) return;
+        int n = results.size();
+        Integer[] raceIds = new Integer[n];
+        Integer[] lanes = new Integer[n];
+        Integer[] duckIds = new Integer[n];
+        Double[] times = new Double[n];
+        Integer[] rounds = new Integer[n];
+        Integer[] heats = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            RaceResult r = results.get(i);
+            raceIds[i] = r.getRaceId();
+            lanes[i] = r.getLane();
+            duckIds[i] = r.getDuckId();
+            times[i] = r.getTime();
+            rounds[i] = r.getRound();
+            heats[i] = r.getHeat();
+        }
+        String sql = "INSERT INTO race_results(race_id, lane, duck_id, time, round, heat) "
+                + "SELECT race_id, lane, duck_id, time, round, heat "
+                + "FROM unnest(?::int[], ?::int[], ?::int[], ?::double precision[], ?::int[], ?::int[]) "
+                + "WITH ORDINALITY AS t(race_id, lane, duck_id, time, round, heat, ord) "
+                + "ORDER BY ord";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, c.createArrayOf("integer", raceIds));
+            ps.setArray(2, c.createArrayOf("integer", lanes));
+            ps.setArray(3, c.createArrayOf("integer", duckIds));
+            ps.setArray(4, c.createArrayOf("double precision", times));
+            ps.setArray(5, c.createArrayOf("integer", rounds));
+            ps.setArray(6, c.createArrayOf("integer", heats));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB saveAll error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<RaceResult> findByRace(int raceId) {
+        String sql = "SELECT race_id, lane, duck_id, time, round, heat FROM race_results WHERE race_id = ? ORDER BY id";
+        List<RaceResult> results = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, raceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) results.add(readRow(rs));
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB findByRace error: " + e.getMessage());
+        }
+        return results;
+    }
+
+    @Override
+    public void forEach(Consumer<RaceResult> action) {
+        forEachAfter(0, (position, r) -> action.accept(r));
+    }
+
+    @Override
+    public synchronized void forEachAfter(long afterPosition, PositionedConsumer action) {
+        String sql = "SELECT id, race_id, lane, duck_id, time, round, heat FROM race_results WHERE id > ? ORDER BY id";
+        try {
+            // the driver only streams with a cursor, which needs a transaction
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setLong(1, afterPosition);
+                ps.setFetchSize(1_000);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) action.accept(rs.getLong("id"), readRow(rs));
+                }
+                c.commit();
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB forEach error: " + e.getMessage());
+        }
+    }
+
+    private static RaceResult readRow(ResultSet rs) throws SQLException {
+        return new RaceResult(rs.getInt("race_id"), rs.getInt("lane"), rs.getInt("duck_id"), rs.getDouble("time"),
+                rs.getInt("round"), rs.getInt("heat"));
+    }
+}
@@ -4,12 +4,21 @@ import domain.*;
 import errors.RepoError;
 import util.PageResult;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JDBC-based repository for persisting {@link User} entities (Persoana and Duck subclasses)
@@ -20,12 +29,20 @@ import java.util.Map;
  *   user_friend(user_id, friend_id) symmetrical undirected friendship (stored with user_id < friend_id)
  *
  * Friend relationships now persisted in user_friend; loaded by findAll. findOne currently loads only the base entity.
+ * Paged queries return users without friends; use findPageWithFriends to load them for one page only.
+ * findWithFriends and findPageWithFriends look edges up from both ends, so user_friend needs an index
+ * on friend_id besides its (user_id, friend_id) primary key; {@link #installSchema()} creates it
+ * (resources/db/user_friend.sql).
  */
 public class PostgresUserRepository implements UserRepository {
     private final String url;
     private final String user;
     private final String password;
     Connection c;
+    /** Page totals keyed by count query; short-lived so writes from other instances show up eventually. */
+    private final Map<String, CachedCount> countCache = new ConcurrentHashMap<>();
+    private static final long COUNT_TTL_MS = 30_000;
+    private static final long ESTIMATE_THRESHOLD = 100_000;
 
     public PostgresUserRepository(String url, String user, String password) {
         this.url = url;
@@ -43,6 +60,31 @@ public class PostgresUserRepository implements UserRepository {
         return DriverManager.getConnection(url, user, password);
     }
 
+    /**
+     * Create the duck, friendship and email indexes if missing (runs resources/db/ducks.sql,
+     * resources/db/user_friend.sql and resources/db/users.sql).
+     */
+    public void installSchema() {
+        runScript("ducks.sql");
+        runScript("user_friend.sql");
+        runScript("users.sql");
+    }
+
+    private void runScript(String name) {
+        String script;
+        try (InputStream in = PostgresUserRepository.class.getResourceAsStream("/db/" + name)) {
+            if (in == null) throw new RepoError(name + " not found on classpath");
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepoError("Cannot read " + name + ": " + e.getMessage());
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute(script);
+        } catch (SQLException e) {
+            throw new RepoError("DB installSchema error: " + e.getMessage());
+        }
+    }
+
     @Override
     public User findOne(Integer id) {
         if (id == null) throw new IllegalArgumentException("id is null");
@@ -151,6 +193,41 @@ public class PostgresUserRepository implements UserRepository {
         }
     }
 
+    /**
+     * Load the friend lists of the given users only, using the primary key for user_id and
+     * user_friend_friend_idx for friend_id.
+     * Friends outside the map are hydrated in one batch without their own friend lists.
+     */
+    private void loadFriendshipsFor(Connection c, Map<Integer, User> page) throws SQLException {
+        if (page.isEmpty()) return;
+        String sql = "SELECT user_id, friend_id FROM user_friend WHERE user_id = ANY(?) OR friend_id = ANY(?)";
+        List<int[]> edges = new ArrayList<>();
+        Set<Integer> outside = new HashSet<>();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            Array ids = c.createArrayOf("integer", page.keySet().toArray(new Integer[0]));
+            ps.setArray(1, ids);
+            ps.setArray(2, ids);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int u1 = rs.getInt("user_id");
+                    int u2 = rs.getInt("friend_id");
+                    edges.add(new int[]{u1, u2});
+                    if (!page.containsKey(u1)) outside.add(u1);
+                    if (!page.containsKey(u2)) outside.add(u2);
+                }
+            }
+        }
+        Map<Integer, User> others = findByIds(outside);
+        for (int[] e : edges) {
+            User user1 = page.containsKey(e[0]) ? page.get(e[0]) : others.get(e[0]);
+            User user2 = page.containsKey(e[1]) ? page.get(e[1]) : others.get(e[1]);
+            if (user1 == null || user2 == null) continue;
+            if (page.containsKey(e[0])) user1.addFriend(user2);
+            if (page.containsKey(e[1])) user2.addFriend(user1);
+        }
+    }
+
+    @Override
     public void saveFriendship(int id1, int id2) {
         if (id1 == id2) throw new RepoError("Cannot friend self");
         int a = Math.min(id1, id2);
@@ -165,6 +242,7 @@ public class PostgresUserRepository implements UserRepository {
         }
     }
 
+    @Override
     public void deleteFriendship(int id1, int id2) {
         int a = Math.min(id1, id2);
         int b = Math.max(id1, id2);
@@ -178,6 +256,65 @@ public class PostgresUserRepository implements UserRepository {
         }
     }
 
+    @Override
+    public void saveFriendships(Collection<int[]> pairs) {
+        int[][] columns = friendshipColumns(pairs);
+        if (columns[0].length == 0) return;
+        String sql = "INSERT INTO user_friend(user_id, friend_id) "
+                + "SELECT * FROM unnest(?::int[], ?::int[]) ON CONFLICT DO NOTHING";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, c.createArrayOf("integer", boxed(columns[0])));
+            ps.setArray(2, c.createArrayOf("integer", boxed(columns[1])));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB saveFriendships error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteFriendships(Collection<int[]> pairs) {
+        int[][] columns = friendshipColumns(pairs);
+        if (columns[0].length == 0) return;
+        String sql = "DELETE FROM user_friend f USING unnest(?::int[], ?::int[]) AS d(a, b) "
+                + "WHERE f.user_id = d.a AND f.friend_id = d.b";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, c.createArrayOf("integer", boxed(columns[0])));
+            ps.setArray(2, c.createArrayOf("integer", boxed(columns[1])));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RepoError("DB deleteFriendships error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Normalize pairs to (min, max) like user_friend stores them, dropping duplicates.
+     *
+     * @return {user_id column, friend_id column}
+     */
+    private static int[][] friendshipColumns(Collection<int[]> pairs) {
+        Set<Long> seen = new HashSet<>();
+        int[] a = new int[pairs.size()];
+        int[] b = new int[pairs.size()];
+        int n = 0;
+        for (int[] pair : pairs) {
+            if (pair[0] == pair[1]) throw new RepoError("Cannot friend self");
+            int lo = Math.min(pair[0], pair[1]);
+            int hi = Math.max(pair[0], pair[1]);
+            if (seen.add(((long) lo << 32) | (hi & 0xffffffffL))) {
+                a[n] = lo;
+                b[n] = hi;
+                n++;
+            }
+        }
+        return new int[][]{Arrays.copyOf(a, n), Arrays.copyOf(b, n)};
+    }
+
+    private static Integer[] boxed(int[] values) {
+        Integer[] result = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) result[i] = values[i];
+        return result;
+    }
+
     @Override
     public User findByEmail(String email) {
         if (email == null) {
@@ -262,6 +399,7 @@ public class PostgresUserRepository implements UserRepository {
                 throw new RepoError("Unknown user subtype");
             }
             c.commit();
+            invalidateCounts();
             return entity;
         } catch (SQLException e) {
             throw new RepoError("DB save error: " + e.getMessage());
@@ -277,6 +415,7 @@ public class PostgresUserRepository implements UserRepository {
         try (PreparedStatement ps = c.prepareStatement(sqlBase)) {
             ps.setInt(1, id);
             ps.executeUpdate();
+            invalidateCounts();
             return existing;
         } catch (SQLException e) {
             throw new RepoError("DB delete error: " + e.getMessage());
@@ -288,6 +427,32 @@ public class PostgresUserRepository implements UserRepository {
         return findDuckPage(0, Integer.MAX_VALUE, null).getItems();
     }
 
+    @Override
+    public List<Duck> findTopSwimmers(int limit) {
+        if (limit <= 0) throw new RepoError("Invalid limit");
+        // the limit is applied on duck alone (served by duck_swimmers_speed_idx, see ducks.sql),
+        // so user_base is only joined for the rows returned
+        String sql = "SELECT t.id, ub.username, t.tip_rata, t.viteza, t.rezistenta FROM (" +
+                "SELECT id, tip_rata, viteza, rezistenta FROM duck " +
+                "WHERE tip_rata IN ('SWIMMING', 'FLYING_AND_SWIMMING') " +
+                "ORDER BY viteza DESC, rezistenta DESC, id LIMIT ?) t " +
+                "JOIN user_base ub ON ub.id = t.id " +
+                "ORDER BY t.viteza DESC, t.rezistenta DESC, t.id";
+        List<Duck> result = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(buildDuckEntity(rs.getInt("id"), rs.getString("username"), null, null,
+                            rs.getString("tip_rata"), rs.getDouble("viteza"), rs.getDouble("rezistenta")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB findTopSwimmers error: " + e.getMessage());
+        }
+        return result;
+    }
+
     @Override
     public PageResult<User> findPage(int pageIndex, int pageSize) {
         return fetchPage(pageIndex, pageSize, null);
@@ -295,15 +460,57 @@ public class PostgresUserRepository implements UserRepository {
 
     @Override
     public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter) {
-        PageSpec spec = (filter == null)
+        PageResult<User> page = fetchPage(pageIndex, pageSize, duckSpec(filter));
+        return new PageResult<>(page.getItems().stream().map(Duck.class::cast).toList(), pageIndex, pageSize, page.getTotalItems());
+    }
+
+    @Override
+    public PageResult<User> findPage(int pageIndex, int pageSize, Integer afterId) {
+        return seekPage(pageIndex, pageSize, afterId, PageSpec.all());
+    }
+
+    @Override
+    public PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter, Integer afterId) {
+        PageResult<User> page = seekPage(pageIndex, pageSize, afterId, duckSpec(filter));
+        return new PageResult<>(page.getItems().stream().map(Duck.class::cast).toList(), pageIndex, pageSize,
+                page.getTotalItems(), page.getNextCursor());
+    }
+
+    @Override
+    public User findWithFriends(int id) {
+        User found = findOne(id);
+        if (found == null) return null;
+        Map<Integer, User> single = new HashMap<>();
+        single.put(id, found);
+        try {
+            loadFriendshipsFor(c, single);
+        } catch (SQLException e) {
+            throw new RepoError("DB load friendships error: " + e.getMessage());
+        }
+        return found;
+    }
+
+    @Override
+    public PageResult<User> findPageWithFriends(int pageIndex, int pageSize, Integer afterId) {
+        PageResult<User> page = findPage(pageIndex, pageSize, afterId);
+        Map<Integer, User> items = new LinkedHashMap<>();
+        for (User u : page.getItems()) items.put(u.getId(), u);
+        try {
+            loadFriendshipsFor(c, items);
+        } catch (SQLException e) {
+            throw new RepoError("DB load friendships error: " + e.getMessage());
+        }
+        return page;
+    }
+
+    private static PageSpec duckSpec(TipRata filter) {
+        return (filter == null)
                 ? PageSpec.duck()
                 : switch (filter) {
                     case FLYING -> PageSpec.flying();
                     case SWIMMING -> PageSpec.swimming();
                     case FLYING_AND_SWIMMING -> PageSpec.amphibious();
                 };
-        PageResult<User> page = fetchPage(pageIndex, pageSize, spec);
-        return new PageResult<>(page.getItems().stream().map(Duck.class::cast).toList(), pageIndex, pageSize, page.getTotalItems());
     }
 
     private PageResult<User> fetchPage(int pageIndex, int pageSize, PageSpec spec) {
@@ -325,16 +532,58 @@ public class PostgresUserRepository implements UserRepository {
         } catch (SQLException e) {
             throw new RepoError("DB pagination error: " + e.getMessage());
         }
-        try {
-            loadFriendships(c, items);
+        return new PageResult<>(items.values().stream().toList(), pageIndex, pageSize, total);
+    }
+
+    private PageResult<User> seekPage(int pageIndex, int pageSize, Integer afterId, PageSpec spec) {
+        // keyset pagination: WHERE id > afterId ORDER BY id LIMIT pageSize + 1 (the extra row only tells if more exist)
+        if (pageIndex < 0 || pageSize <= 0 || pageSize == Integer.MAX_VALUE) {
+            throw new RepoError("Invalid pagination arguments");
+        }
+        long total = countEntities(spec);
+        Map<Integer, User> items = new LinkedHashMap<>();
+        boolean more = false;
+        try (PreparedStatement ps = c.prepareStatement(spec.seekSql)) {
+            ps.setInt(1, afterId != null ? afterId : Integer.MIN_VALUE);
+            ps.setInt(2, pageSize + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (items.size() == pageSize) {
+                        more = true;
+                        break;
+                    }
+                    items.putAll(createUserFromRow(rs));
+                }
+            }
         } catch (SQLException e) {
-            throw new RepoError("DB load friendships error: " + e.getMessage());
+            throw new RepoError("DB pagination error: " + e.getMessage());
         }
-        return new PageResult<>(items.values().stream().toList(), pageIndex, pageSize, total);
+        List<User> list = items.values().stream().toList();
+        Integer next = more ? list.get(list.size() - 1).getId() : null;
+        return new PageResult<>(list, pageIndex, pageSize, total, next);
     }
 
     private long countEntities(PageSpec spec) {
-        try (PreparedStatement ps = c.prepareStatement(spec.countSql);
+        CachedCount cached = countCache.get(spec.countSql);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.at < COUNT_TTL_MS) {
+            return cached.value;
+        }
+        long value = -1;
+        if (spec.estimateSql != null) {
+            // planner statistics are free to read; trust them only for big tables where COUNT(*) hurts
+            value = querySingleLong(spec.estimateSql);
+            if (value < ESTIMATE_THRESHOLD) value = -1;
+        }
+        if (value < 0) {
+            value = querySingleLong(spec.countSql);
+        }
+        countCache.put(spec.countSql, new CachedCount(value, now));
+        return value;
+    }
+
+    private long querySingleLong(String sql) {
+        try (PreparedStatement ps = c.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             return rs.next() ? rs.getLong(1) : 0;
         } catch (SQLException e) {
@@ -342,6 +591,11 @@ public class PostgresUserRepository implements UserRepository {
         }
     }
 
+    /** Drop cached page totals after a write that changes row counts. */
+    private void invalidateCounts() {
+        countCache.clear();
+    }
+
     private Map<Integer, User> createUserFromRow(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
         String username = rs.getString("username");
@@ -372,6 +626,28 @@ public class PostgresUserRepository implements UserRepository {
         };
     }
 
+    @Override
+    public Map<Integer, User> findByIds(Collection<Integer> ids) {
+        Map<Integer, User> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) return result;
+        String sql = "SELECT ub.id, ub.username, ub.email, ub.password, p.nume, p.prenume, p.ocupatie, p.data_nasterii, p.nivel_empatie, " +
+                "d.tip_rata, d.viteza, d.rezistenta FROM user_base ub " +
+                "LEFT JOIN persoana p ON p.id = ub.id LEFT JOIN duck d ON d.id = ub.id " +
+                "WHERE ub.id = ANY(?)";
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setArray(1, c.createArrayOf("integer", ids.toArray(new Integer[0])));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getString("nume") == null && rs.getString("tip_rata") == null) continue; // orphan base row
+                    result.putAll(createUserFromRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RepoError("DB findByIds error: " + e.getMessage());
+        }
+        return result;
+    }
+
     @Override
     public void updatePassword(int userId, String hashedPassword) {
         String sql = "UPDATE user_base SET password = ? WHERE id = ?";
@@ -384,17 +660,20 @@ public class PostgresUserRepository implements UserRepository {
         }
     }
 
-    private record PageSpec(String sql, String countSql) {
+    private record CachedCount(long value, long at) {}
+
+    private record PageSpec(String sql, String seekSql, String countSql, String estimateSql) {
         static PageSpec all() {
             // prepares query for all users (Persoana and Duck)
             String base = "WITH ordered AS (" +
                     "SELECT ub.id, ub.username, ub.email, ub.password, p.nume, p.prenume, p.ocupatie, p.data_nasterii, p.nivel_empatie, " +
                     "NULL AS tip_rata, NULL AS viteza, NULL AS rezistenta FROM user_base ub JOIN persoana p ON ub.id = p.id " +
                     "UNION ALL " +
-                    "SELECT ub.id, ub.username, ub.email, ub.password, NULL, NULL, NULL, NULL, NULL, d.tip_rata, d.viteza, d.rezistenta FROM user_base ub JOIN duck d ON ub.id = d.id) " +
-                    "SELECT * FROM ordered ORDER BY id OFFSET ? LIMIT ?";
+                    "SELECT ub.id, ub.username, ub.email, ub.password, NULL, NULL, NULL, NULL, NULL, d.tip_rata, d.viteza, d.rezistenta FROM user_base ub JOIN duck d ON ub.id = d.id) ";
             String count = "SELECT (SELECT COUNT(*) FROM persoana) + (SELECT COUNT(*) FROM duck)";
-            return new PageSpec(base, count);
+            String estimate = "SELECT COALESCE(SUM(reltuples), -1)::bigint FROM pg_class WHERE relname IN ('persoana', 'duck') AND reltuples >= 0";
+            return new PageSpec(base + "SELECT * FROM ordered ORDER BY id OFFSET ? LIMIT ?",
+                    base + "SELECT * FROM ordered WHERE id > ? ORDER BY id LIMIT ?", count, estimate);
         }
         static PageSpec duck() {
             return typed(null);
@@ -405,10 +684,14 @@ public class PostgresUserRepository implements UserRepository {
         private static PageSpec typed(String type) {
             // prepares query for ducks of given type (or all if type==null)
             String whereClause = type == null ? "" : " WHERE d.tip_rata = '" + type + "'";
-            String sql = "SELECT ub.id, ub.username, ub.email, ub.password, NULL AS nume, NULL AS prenume, NULL AS ocupatie, NULL AS data_nasterii, NULL AS nivel_empatie, d.tip_rata, d.viteza, d.rezistenta " +
-                    "FROM user_base ub JOIN duck d ON ub.id = d.id" + whereClause + " ORDER BY ub.id OFFSET ? LIMIT ?";
+            String select = "SELECT ub.id, ub.username, ub.email, ub.password, NULL AS nume, NULL AS prenume, NULL AS ocupatie, NULL AS data_nasterii, NULL AS nivel_empatie, d.tip_rata, d.viteza, d.rezistenta " +
+                    "FROM user_base ub JOIN duck d ON ub.id = d.id";
+            String sql = select + whereClause + " ORDER BY ub.id OFFSET ? LIMIT ?";
+            String seek = select + (type == null ? " WHERE" : whereClause + " AND") + " ub.id > ? ORDER BY ub.id LIMIT ?";
             String count = "SELECT COUNT(*) FROM duck" + (type == null ? "" : " WHERE tip_rata = '" + type + "'");
-            return new PageSpec(sql, count);
+            // per-type selectivity is not in reltuples, so filtered pages keep the exact (cached) count
+            String estimate = type == null ? "SELECT reltuples::bigint FROM pg_class WHERE relname = 'duck'" : null;
+            return new PageSpec(sql, seek, count, estimate);
         }
     }
 }
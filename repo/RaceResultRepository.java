@@ -0,0 +1,43 @@
+package repo;
+
+import domain.RaceResult;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only history of race lane results. Every run of a race adds its lanes; nothing is
+ * overwritten, so the history can always be replayed to rebuild derived standings.
+ */
+public interface RaceResultRepository {
+    /**
+     * Receives a stored result with its position in the history.
+     */
+    @FunctionalInterface
+    interface PositionedConsumer {
+        void accept(long position, RaceResult result);
+    }
+
+    /**
+     * Store a batch of lane results (possibly of many races) in one write.
+     */
+    void saveAll(List<RaceResult> results);
+
+    /**
+     * @return every stored lane result of the race, in the order they were saved
+     */
+    List<RaceResult> findByRace(int raceId);
+
+    /**
+     * Visit every stored result in the order they were saved, without holding them all in memory.
+     */
+    void forEach(Consumer<RaceResult> action);
+
+    /**
+     * Visit the results stored after the given position, in save order. Positions are positive,
+     * increase with save order and never change; they need not be contiguous.
+     *
+     * @param afterPosition 0 for the whole history
+     */
+    void forEachAfter(long afterPosition, PositionedConsumer action);
+}
@@ -0,0 +1,53 @@
+package repo;
+
+import domain.User;
+import errors.RepoError;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@link BulkUserLoader} for backends without a bulk path (in-memory, embedded): saves row by
+ * row through a {@link UserRepository}, turning each {@link RepoError} into a reject.
+ */
+public class RepositoryBulkLoader implements BulkUserLoader {
+    private final UserRepository userRepository;
+
+    public RepositoryBulkLoader(UserRepository userRepository) {
+        this.userRepository = Objects.requireNonNull(userRepository, "userRepository");
+    }
+
+    @Override
+    public Map<Integer, String> loadUsers(List<User> users) {
+        Map<Integer, String> rejects = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                userRepository.save(users.get(i));
+            } catch (RepoError e) {
+                rejects.put(i, e.getMessage());
+            }
+        }
+        return rejects;
+    }
+
+    @Override
+    public Map<Integer, String> loadFriendships(List<String[]> emailPairs) {
+        Map<Integer, String> rejects = new LinkedHashMap<>();
+        for (int i = 0; i < emailPairs.size(); i++) {
+            User a = userRepository.findByEmail(emailPairs.get(i)[0]);
+            User b = userRepository.findByEmail(emailPairs.get(i)[1]);
+            if (a == null || b == null) {
+                rejects.put(i, "Unknown user email");
+                continue;
+            }
+            try {
+                userRepository.saveFriendship(a.getId(), b.getId());
+            } catch (RepoError e) {
+                rejects.put(i, e.getMessage());
+            }
+        }
+        return rejects;
+    }
+}
@@ -4,6 +4,10 @@ package repo;
 import domain.TipRata;
 import domain.User;
 import util.PageResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 /**
  * Repository interface for User entities.
  */
@@ -15,7 +19,72 @@ public interface UserRepository extends Repository<Integer, User>{
     Iterable<Duck> findAllDucks();
     PageResult<User> findPage(int pageIndex, int pageSize);
     PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter);
+
+    /**
+     * Seek (keyset) variant of {@link #findPage(int, int)}: returns the users with id greater than
+     * {@code afterId}. The total is cached or estimated and is meant for display only.
+     *
+     * @param pageIndex page number reported back in the result (display only)
+     * @param afterId   cursor from {@link PageResult#getNextCursor()}, or null for the first page
+     */
+    PageResult<User> findPage(int pageIndex, int pageSize, Integer afterId);
+
+    /**
+     * Seek (keyset) variant of {@link #findDuckPage(int, int, TipRata)}.
+     */
+    PageResult<Duck> findDuckPage(int pageIndex, int pageSize, TipRata filter, Integer afterId);
+
+    /**
+     * The fastest swimming-capable ducks ({@link domain.Inotator}): ordered by speed desc, then
+     * endurance desc, then id. The ducks are lightweight projections for racing: id, username,
+     * type, speed and endurance only, with no email, password or friend list.
+     *
+     * @param limit maximum number of ducks returned (> 0)
+     */
+    List<Duck> findTopSwimmers(int limit);
+
+    /**
+     * Load a single user together with its friend list (friends come without their own friends).
+     * Cost is proportional to the user's degree, not to the size of the network.
+     *
+     * @return the user or null if not found
+     */
+    User findWithFriends(int id);
+
+    /**
+     * Like {@link #findPage(int, int, Integer)} but also loads the friend lists of the users on the page.
+     * Paged queries do not load friends otherwise.
+     */
+    PageResult<User> findPageWithFriends(int pageIndex, int pageSize, Integer afterId);
     User findByEmail(String email);
     boolean emailExists(String email);
     void updatePassword(int userId, String hashedPassword);
+
+    /**
+     * Persist an undirected friendship (no-op if it already exists).
+     */
+    void saveFriendship(int id1, int id2);
+
+    /**
+     * Remove an undirected friendship (no-op if absent).
+     */
+    void deleteFriendship(int id1, int id2);
+
+    /**
+     * Persist many friendships at once; pairs are {id1, id2}, existing friendships are kept.
+     */
+    void saveFriendships(Collection<int[]> pairs);
+
+    /**
+     * Remove many friendships at once; pairs are {id1, id2}, missing friendships are ignored.
+     */
+    void deleteFriendships(Collection<int[]> pairs);
+
+    /**
+     * Hydrate several users in one round trip. Friend lists are not loaded.
+     *
+     * @param ids user ids to load (unknown ids are skipped)
+     * @return users keyed by id
+     */
+    Map<Integer, User> findByIds(Collection<Integer> ids);
 }
@@ -0,0 +1,349 @@
+package repo;
+
+import errors.RepoError;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, checksummed record log with group commit.
+ *
+ * Every record is framed as {@code [int length][long lsn][int crc32][payload]}, where the CRC
+ * covers the lsn and the payload. Appends only write to the file; a single background flusher
+ * thread calls {@code fsync} for everything written so far, so concurrent writers waiting in
+ * {@link #awaitDurable(long)} share one sync instead of paying for one each.
+ *
+ * Logs are read back through a memory-mapped buffer. A torn or corrupt tail (crash in the
+ * middle of an append) ends the replay and is cut off, everything before it is kept.
+ */
+public final class WriteAheadLog implements AutoCloseable {
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * Receives one replayed record.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void accept(long lsn, byte[] payload);
+    }
+
+    private final FileChannel channel;
+    private final Thread flusher;
+    private long lastLsn;
+    private long writtenLsn;
+    private long durableLsn;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Open (or create) a log for appending. Call {@link #replay} first so the file ends on a
+     * complete record.
+     *
+     * @param path    log file
+     * @param lastLsn highest lsn already used; new records continue from there
+     */
+    public WriteAheadLog(Path path, long lastLsn) {
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new RepoError("DB log open error: " + e.getMessage());
+        }
+        this.lastLsn = lastLsn;
+        this.writtenLsn = lastLsn;
+        this.durableLsn = lastLsn;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Append one record. The record is written but not yet durable; see {@link #awaitDurable(long)}.
+     *
+     * @return the lsn assigned to the record
+     */
+    public synchronized long append(byte[] payload) {
+        ensureWritable();
+        long lsn = lastLsn + 1;
+        try {
+            ByteBuffer frame = frame(lsn, payload);
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            failure = e;
+            notifyAll();
+            throw new RepoError("DB log append error: " + e.getMessage());
+        }
+        lastLsn = lsn;
+        writtenLsn = lsn;
+        notifyAll();
+        return lsn;
+    }
+
+    /**
+     * Throw if appends can no longer succeed (log closed, or an earlier write or sync failed).
+     */
+    public synchronized void ensureWritable() {
+        if (closed) throw new RepoError("DB log append error: log is closed");
+        if (failure != null) throw new RepoError("DB log append error: " + failure.getMessage());
+    }
+
+    /**
+     * Block until the record with the given lsn (and all before it) has been synced to disk.
+     */
+    public synchronized void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        try {
+            while (durableLsn < lsn) {
+                if (failure != null) throw new RepoError("DB log sync error: " + failure.getMessage());
+                if (closed) throw new RepoError("DB log sync error: log is closed");
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return highest lsn appended so far
+     */
+    public synchronized long lastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * @return current size of the log file in bytes
+     */
+    public long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new RepoError("DB log size error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drop every record. Only valid once a durable snapshot covers {@link #lastLsn()}, which is
+     * why waiting writers are released as durable. Lsns keep increasing afterwards.
+     */
+    public synchronized void reset() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RepoError("DB log reset error: " + e.getMessage());
+        }
+        durableLsn = writtenLsn;
+        notifyAll();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            channel.force(true);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RepoError("DB log close error: " + e.getMessage());
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                while (!closed && durableLsn >= writtenLsn) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (durableLsn >= writtenLsn) return;
+                target = writtenLsn;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                if (target > durableLsn) durableLsn = target;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Replay every valid record of a log file with lsn greater than afterLsn.
+     *
+     * @param repairTail if true a torn/corrupt tail is truncated away; if false it is an error
+     *                   (used for snapshots, which are only ever installed complete)
+     * @return highest lsn found in the file, or afterLsn if none is higher
+     */
+    public static long replay(Path path, long afterLsn, boolean repairTail, RecordHandler handler) {
+        if (!Files.exists(path)) return afterLsn;
+        long maxLsn = afterLsn;
+        long validEnd = 0;
+        long size;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = in.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RepoError("DB log replay error: " + path + " exceeds 2 GiB, checkpoint more often");
+            }
+            MappedByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            while (buf.remaining() >= HEADER_BYTES) {
+                int start = buf.position();
+                int length = buf.getInt();
+                long lsn = buf.getLong();
+                int checksum = buf.getInt();
+                if (length < 0 || length > buf.remaining()) break;
+                byte[] payload = new byte[length];
+                buf.get(payload);
+                crc.reset();
+                crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, lsn));
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    buf.position(start);
+                    break;
+                }
+                validEnd = buf.position();
+                if (lsn > afterLsn) handler.accept(lsn, payload);
+                if (lsn > maxLsn) maxLsn = lsn;
+            }
+        } catch (IOException e) {
+            throw new RepoError("DB log replay error: " + e.getMessage());
+        }
+        if (validEnd < size) {
+            if (!repairTail) throw new RepoError("DB log replay error: " + path + " is corrupt at offset " + validEnd);
+            try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                out.truncate(validEnd);
+                out.force(true);
+            } catch (IOException e) {
+                throw new RepoError("DB log repair error: " + e.getMessage());
+            }
+        }
+        return maxLsn;
+    }
+
+    /**
+     * Start writing a complete log file (a snapshot) whose records all carry the given lsn. The
+     * file only replaces target on {@link SnapshotWriter#commit()}, atomically and after fsync.
+     */
+    public static SnapshotWriter snapshotWriter(Path target, long lsn) {
+        return new SnapshotWriter(target, lsn);
+    }
+
+    /**
+     * Buffered, sequential writer for snapshot files.
+     */
+    public static final class SnapshotWriter implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final long lsn;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private boolean committed;
+
+        private SnapshotWriter(Path target, long lsn) {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.lsn = lsn;
+            try {
+                this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                throw new RepoError("DB snapshot open error: " + e.getMessage());
+            }
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        }
+
+        public void append(byte[] payload) {
+            ByteBuffer frame = frame(lsn, payload);
+            try {
+                out.write(frame.array(), 0, frame.limit());
+            } catch (IOException e) {
+                throw new RepoError("DB snapshot write error: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Sync the file and atomically move it over the previous snapshot.
+         */
+        public void commit() {
+            try {
+                out.flush();
+                channel.force(true);
+                channel.close();
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory(target.toAbsolutePath().getParent());
+                committed = true;
+            } catch (IOException e) {
+                throw new RepoError("DB snapshot commit error: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            if (committed) return;
+            try {
+                channel.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // best effort cleanup of an abandoned snapshot
+            }
+        }
+    }
+
+    private static ByteBuffer frame(long lsn, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, lsn));
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putLong(lsn).putInt((int) crc.getValue()).put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Make a rename durable. Not every platform can open a directory; there the rename is as
+     * durable as the file system makes it.
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException ignored) {
+            // not supported on this platform
+        }
+    }
+}
@@ -0,0 +1,85 @@
+-- Change feed for cross-instance cache invalidation.
+-- Every statement writing the tables below sends one NOTIFY network_changes whose payload lists
+-- the changed rows, separated by ';':
+--   <entity>:<id>[:<otherId>];<entity>:<id>[:<otherId>]...
+-- where entity is user, friend, card, event, inbox (a notification landed in that user's inbox),
+-- broadcast (a broadcast notification for that event), results (lane results of that race were
+-- saved) or messages:<min id>:<max id> (messages in that id range got their recipients); see
+-- repo.PostgresChangeListener. A statement
+-- touching more than 200 rows (a COPY import, a batch friendship insert) sends 'reset:-1'
+-- instead, so listeners drop their caches once rather than row by row; this also keeps the
+-- payload under NOTIFY's 8000 byte limit.
+-- The triggers are statement-level with transition tables, which PostgreSQL only allows for a
+-- single event per trigger, hence three triggers per table.
+-- Safe to re-run.
+
+DROP TRIGGER IF EXISTS user_base_changes ON user_base;
+DROP TRIGGER IF EXISTS user_friend_changes ON user_friend;
+DROP TRIGGER IF EXISTS card_duck_changes ON card_duck;
+DROP TRIGGER IF EXISTS event_subscribers_changes ON event_subscribers;
+DROP FUNCTION IF EXISTS notify_network_change();
+
+CREATE OR REPLACE FUNCTION notify_network_changes() RETURNS trigger AS $$
+DECLARE
+    rows_changed bigint;
+    payload TEXT;
+BEGIN
+    -- separate branches: each table has its own key columns
+    IF TG_TABLE_NAME = 'user_base' THEN
+        SELECT count(*), string_agg('user:' || id, ';') INTO rows_changed, payload FROM changed;
+    ELSIF TG_TABLE_NAME = 'user_friend' THEN
+        SELECT count(*), string_agg('friend:' || user_id || ':' || friend_id, ';') INTO rows_changed, payload FROM changed;
+    ELSIF TG_TABLE_NAME = 'card_duck' THEN
+        SELECT count(*), string_agg('card:' || card_id || ':' || duck_id, ';') INTO rows_changed, payload FROM changed;
+    ELSIF TG_TABLE_NAME = 'event_subscribers' THEN
+        SELECT count(*), string_agg('event:' || event_id || ':' || user_id, ';') INTO rows_changed, payload FROM changed;
+    ELSIF TG_TABLE_NAME = 'user_notifications' THEN
+        SELECT count(*), string_agg('inbox:' || user_id, ';') INTO rows_changed, payload
+        FROM (SELECT DISTINCT user_id FROM changed) u;
+    ELSIF TG_TABLE_NAME = 'notifications' THEN
+        SELECT count(*), string_agg('broadcast:' || event_id, ';') INTO rows_changed, payload
+        FROM (SELECT DISTINCT event_id FROM changed WHERE broadcast) b;
+    ELSIF TG_TABLE_NAME = 'message_recipients' THEN
+        -- one range per statement however large the batch, so message ingest never resets
+        SELECT least(count(*), 1), 'messages:' || min(message_id) || ':' || max(message_id)
+        INTO rows_changed, payload FROM changed;
+    ELSIF TG_TABLE_NAME = 'race_results' THEN
+        SELECT count(*), string_agg('results:' || race_id, ';') INTO rows_changed, payload
+        FROM (SELECT DISTINCT race_id FROM changed) r;
+    ELSE
+        RETURN NULL;
+    END IF;
+    IF rows_changed = 0 THEN
+        RETURN NULL;
+    END IF;
+    IF rows_changed > 200 THEN
+        payload := 'reset:-1';
+    END IF;
+    PERFORM pg_notify('network_changes', payload);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['user_base', 'user_friend', 'card_duck', 'event_subscribers'] LOOP
+        EXECUTE format('DROP TRIGGER IF EXISTS %1$s_inserts ON %1$s', t);
+        EXECUTE format('DROP TRIGGER IF EXISTS %1$s_updates ON %1$s', t);
+        EXECUTE format('DROP TRIGGER IF EXISTS %1$s_deletes ON %1$s', t);
+        EXECUTE format('CREATE TRIGGER %1$s_inserts AFTER INSERT ON %1$s REFERENCING NEW TABLE AS changed '
+                       'FOR EACH STATEMENT EXECUTE FUNCTION notify_network_changes()', t);
+        EXECUTE format('CREATE TRIGGER %1$s_updates AFTER UPDATE ON %1$s REFERENCING NEW TABLE AS changed '
+                       'FOR EACH STATEMENT EXECUTE FUNCTION notify_network_changes()', t);
+        EXECUTE format('CREATE TRIGGER %1$s_deletes AFTER DELETE ON %1$s REFERENCING OLD TABLE AS changed '
+                       'FOR EACH STATEMENT EXECUTE FUNCTION notify_network_changes()', t);
+    END LOOP;
+    -- inboxes, messages and race results only grow
+    FOREACH t IN ARRAY ARRAY['user_notifications', 'notifications', 'message_recipients', 'race_results'] LOOP
+        EXECUTE format('DROP TRIGGER IF EXISTS %1$s_inserts ON %1$s', t);
+        EXECUTE format('CREATE TRIGGER %1$s_inserts AFTER INSERT ON %1$s REFERENCING NEW TABLE AS changed '
+                       'FOR EACH STATEMENT EXECUTE FUNCTION notify_network_changes()', t);
+    END LOOP;
+END;
+$$;
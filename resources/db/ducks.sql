@@ -0,0 +1,9 @@
+-- Race candidate lookup (see repo.PostgresUserRepository#findTopSwimmers).
+-- Only swimming-capable ducks are indexed, already in race order, so the top-M query reads
+-- M index entries instead of sorting the duck table.
+-- Safe to re-run.
+
+CREATE INDEX IF NOT EXISTS duck_swimmers_speed_idx
+    ON duck(viteza DESC, rezistenta DESC, id)
+    INCLUDE (tip_rata)
+    WHERE tip_rata IN ('SWIMMING', 'FLYING_AND_SWIMMING');
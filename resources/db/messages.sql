@@ -0,0 +1,13 @@
+-- Chat inbox support (see repo.PostgresMessageRepository#findInboxSummary).
+-- conversation_reads keeps, per reader and partner, the newest message id the reader has seen.
+-- Safe to re-run.
+
+CREATE TABLE IF NOT EXISTS conversation_reads (
+    user_id       int NOT NULL REFERENCES user_base(id) ON DELETE CASCADE,
+    partner_id    int NOT NULL REFERENCES user_base(id) ON DELETE CASCADE,
+    last_read_id  int NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, partner_id)
+);
+
+CREATE INDEX IF NOT EXISTS messages_sender_idx ON messages(sender_id, id);
+CREATE INDEX IF NOT EXISTS message_recipients_recipient_idx ON message_recipients(recipient_id, message_id);
@@ -0,0 +1,52 @@
+-- Per-user notification inboxes (see repo.PostgresNotificationRepository).
+-- Notifications with few recipients get one user_notifications row per recipient;
+-- broadcast ones are stored once and matched against event_subscribers when read.
+-- A broadcast's audience is the subscribers at the time it was written: subscribed_at hides
+-- older broadcasts from later subscribers, and unsubscribing copies the broadcasts already
+-- received into user_notifications so they stay in the inbox.
+-- Safe to re-run.
+
+CREATE TABLE IF NOT EXISTS notifications (
+    id          serial PRIMARY KEY,
+    event_id    int NOT NULL REFERENCES events(id) ON DELETE CASCADE,
+    message     text NOT NULL,
+    created_at  timestamp NOT NULL DEFAULT now(),
+    broadcast   boolean NOT NULL DEFAULT false
+);
+
+CREATE INDEX IF NOT EXISTS notifications_broadcast_idx ON notifications(event_id, id) WHERE broadcast;
+
+CREATE TABLE IF NOT EXISTS user_notifications (
+    user_id          int NOT NULL REFERENCES user_base(id) ON DELETE CASCADE,
+    notification_id  int NOT NULL REFERENCES notifications(id) ON DELETE CASCADE,
+    PRIMARY KEY (user_id, notification_id)
+);
+
+CREATE TABLE IF NOT EXISTS user_inbox_state (
+    user_id       int PRIMARY KEY REFERENCES user_base(id) ON DELETE CASCADE,
+    last_read_id  int NOT NULL DEFAULT 0
+);
+
+CREATE INDEX IF NOT EXISTS event_subscribers_user_idx ON event_subscribers(user_id, event_id);
+
+-- existing subscriptions keep every old broadcast; new ones start at their insert
+ALTER TABLE event_subscribers ADD COLUMN IF NOT EXISTS subscribed_at timestamp NOT NULL DEFAULT '-infinity';
+ALTER TABLE event_subscribers ALTER COLUMN subscribed_at SET DEFAULT localtimestamp;
+
+CREATE OR REPLACE FUNCTION keep_received_broadcasts() RETURNS trigger AS $$
+BEGIN
+    -- nothing to keep when the unsubscribe is a cascade from deleting the user or the event
+    IF EXISTS (SELECT 1 FROM user_base WHERE id = OLD.user_id)
+       AND EXISTS (SELECT 1 FROM events WHERE id = OLD.event_id) THEN
+        INSERT INTO user_notifications(user_id, notification_id)
+        SELECT OLD.user_id, n.id FROM notifications n
+        WHERE n.event_id = OLD.event_id AND n.broadcast AND n.created_at >= OLD.subscribed_at
+        ON CONFLICT DO NOTHING;
+    END IF;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS event_subscribers_keep_broadcasts ON event_subscribers;
+CREATE TRIGGER event_subscribers_keep_broadcasts BEFORE DELETE ON event_subscribers
+    FOR EACH ROW EXECUTE FUNCTION keep_received_broadcasts();
@@ -0,0 +1,17 @@
+-- Race lane results (see repo.PostgresRaceResultRepository).
+-- Append-only: every run of a race adds one row per lane; id gives the save order.
+-- round/heat identify the heat of a tournament (0 for plain races).
+-- Safe to re-run.
+
+CREATE TABLE IF NOT EXISTS race_results (
+    id        bigserial PRIMARY KEY,
+    race_id   int NOT NULL REFERENCES events(id) ON DELETE CASCADE,
+    lane      int NOT NULL,
+    duck_id   int NOT NULL REFERENCES duck(id) ON DELETE CASCADE,
+    time      double precision NOT NULL
+);
+
+ALTER TABLE race_results ADD COLUMN IF NOT EXISTS round int NOT NULL DEFAULT 0;
+ALTER TABLE race_results ADD COLUMN IF NOT EXISTS heat int NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS race_results_race_idx ON race_results(race_id, id);
@@ -0,0 +1,7 @@
+-- Friend lookups from either end (see repo.PostgresUserRepository#findPageWithFriends and
+-- #findWithFriends). The (user_id, friend_id) primary key covers user_id; this index covers
+-- friend_id, so "user_id = ANY(..) OR friend_id = ANY(..)" is a bitmap OR of two index scans
+-- instead of a scan of the whole edge table.
+-- Safe to re-run.
+
+CREATE INDEX IF NOT EXISTS user_friend_friend_idx ON user_friend(friend_id);
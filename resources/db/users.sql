@@ -0,0 +1,6 @@
+-- Case-insensitive email lookups (see repo.PostgresBulkLoader). Imports resolve friendship
+-- rows and reject duplicate users by lower(email); without this index each batch is a scan
+-- of user_base.
+-- Safe to re-run.
+
+CREATE INDEX IF NOT EXISTS user_base_lower_email_idx ON user_base(lower(email));
@@ -0,0 +1,168 @@
+package service;
+
+import domain.Notification;
+import repo.NotificationRepository;
+import util.PageResult;
+import util.RingBuffer;
+import util.TinyLfuCache;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Per-user notification inboxes on top of a {@link NotificationRepository}.
+ *
+ * The newest items of recently read inboxes are kept in a bounded {@link RingBuffer} per user,
+ * and the set of users with a buffer is itself bounded by a {@link TinyLfuCache}; the first
+ * inbox page is served from there, older pages go to the repository. Deliveries append to the
+ * buffers of cached users only, so a broadcast to a large event costs no memory for users who
+ * are not reading their inbox. Deliveries made elsewhere (another instance on the same database)
+ * reach the buffers through {@link #invalidate(int)} / {@link #invalidateAll()}, which drop them
+ * so the next read reloads from the repository.
+ *
+ * Inbox pages are newest first; a page's next cursor is the id to pass as beforeId.
+ */
+public class InboxService {
+    private final NotificationRepository repository;
+    private final TinyLfuCache<Integer, Recent> recent;
+    private final int recentPerUser;
+    /**
+     * Odd while a delivery is in progress, and bumped by 2 on invalidation; lets loads detect
+     * deliveries they may have missed.
+     */
+    private long deliveryEpoch;
+
+    private static final class Recent {
+        final RingBuffer<Notification> items;
+        /** true while the buffer holds the whole inbox */
+        boolean complete;
+
+        Recent(int capacity) {
+            this.items = new RingBuffer<>(capacity);
+        }
+    }
+
+    /**
+     * @param cachedUsers   maximum number of users with an in-memory buffer
+     * @param recentPerUser buffer size per user
+     */
+    public InboxService(NotificationRepository repository, int cachedUsers, int recentPerUser) {
+        this.repository = Objects.requireNonNull(repository, "repository");
+        this.recent = new TinyLfuCache<>(cachedUsers);
+        this.recentPerUser = recentPerUser;
+    }
+
+    /**
+     * Persist and deliver a batch of notifications.
+     */
+    public List<Notification> deliver(List<NotificationRepository.Delivery> deliveries) {
+        synchronized (this) {
+            deliveryEpoch++;
+        }
+        try {
+            List<Notification> stored = repository.deliver(deliveries);
+            for (int i = 0; i < stored.size(); i++) {
+                Notification n = stored.get(i);
+                for (int userId : deliveries.get(i).recipientIds()) {
+                    Recent r = recent.peek(userId);
+                    if (r != null) append(r, n);
+                }
+            }
+            return stored;
+        } finally {
+            synchronized (this) {
+                deliveryEpoch++;
+            }
+        }
+    }
+
+    /**
+     * Drop the user's buffer, e.g. after a delivery by another instance.
+     */
+    public synchronized void invalidate(int userId) {
+        deliveryEpoch += 2;
+        recent.invalidate(userId);
+    }
+
+    /**
+     * Drop every buffer, e.g. after a broadcast by another instance.
+     */
+    public synchronized void invalidateAll() {
+        deliveryEpoch += 2;
+        recent.invalidateAll();
+    }
+
+    /**
+     * Newest-first page of a user's inbox.
+     *
+     * @param beforeId cursor from the previous page, or null for the newest page
+     */
+    public PageResult<Notification> getInbox(int userId, int pageSize, Integer beforeId) {
+        if (pageSize <= 0) throw new IllegalArgumentException("pageSize must be positive");
+        if (beforeId == null && pageSize <= recentPerUser) {
+            Recent r = recentFor(userId);
+            synchronized (r) {
+                List<Notification> items = r.items.newest(pageSize);
+                boolean more = r.items.size() > pageSize || !r.complete;
+                Integer next = items.size() == pageSize && more ? items.get(pageSize - 1).getId() : null;
+                return new PageResult<>(items, 0, pageSize, items.size(), next);
+            }
+        }
+        List<Notification> items = repository.findInbox(userId, beforeId, pageSize + 1);
+        Integer next = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            next = items.get(pageSize - 1).getId();
+        }
+        return new PageResult<>(items, 0, pageSize, items.size(), next);
+    }
+
+    public int getUnreadCount(int userId) {
+        return repository.countUnread(userId);
+    }
+
+    /**
+     * Mark the whole inbox as read, up to its newest notification.
+     */
+    public void markAllRead(int userId) {
+        List<Notification> newest = getInbox(userId, 1, null).getItems();
+        if (!newest.isEmpty()) {
+            repository.markRead(userId, newest.get(0).getId());
+        }
+    }
+
+    public void markRead(int userId, int upToId) {
+        repository.markRead(userId, upToId);
+    }
+
+    private Recent recentFor(int userId) {
+        Recent r = recent.get(userId);
+        if (r != null) return r;
+        long epoch;
+        synchronized (this) {
+            epoch = deliveryEpoch;
+        }
+        List<Notification> loaded = repository.findInbox(userId, null, recentPerUser);
+        r = new Recent(recentPerUser);
+        for (int i = loaded.size() - 1; i >= 0; i--) r.items.add(loaded.get(i));
+        r.complete = loaded.size() < recentPerUser;
+        synchronized (this) {
+            // a delivery overlapping the load may be missing from it: serve, but do not cache
+            if (epoch % 2 == 0 && epoch == deliveryEpoch) {
+                Recent raced = recent.peek(userId);
+                if (raced != null) return raced;
+                recent.put(userId, r);
+            }
+        }
+        return r;
+    }
+
+    private static void append(Recent r, Notification n) {
+        synchronized (r) {
+            Notification newest = r.items.newest();
+            if (newest != null && newest.getId() >= n.getId()) return;
+            if (r.items.size() == r.items.capacity()) r.complete = false;
+            r.items.add(n);
+        }
+    }
+}
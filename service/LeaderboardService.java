@@ -0,0 +1,168 @@
+package service;
+
+import domain.DuckStanding;
+import domain.RaceResult;
+import repo.RaceResultRepository;
+import util.IntObjectMap;
+import util.RankTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Race results and the per-duck leaderboard on top of a {@link RaceResultRepository}.
+ *
+ * Results are stored through the repository; the leaderboard is kept in memory and updated
+ * incrementally per result: best time, races run and average time per duck, with the ducks
+ * ordered by best time in a {@link RankTree}. A duck's rank and the top-k are therefore
+ * O(log n) and O(k log n) instead of a sort over all ducks. The average is an exponential
+ * moving average with weight alpha on the newest race, so it follows a duck's current form
+ * instead of its whole career.
+ *
+ * The leaderboard follows the repository, not the calls made here: {@link #refresh()} applies
+ * every result stored after the last one seen, including results saved by other instances
+ * sharing the database. On construction that streams the stored history once. Positions seen
+ * above a gap are remembered until the gap fills; a gap more than {@link #GAP_WINDOW} positions
+ * old is taken to be a rolled-back insert and skipped.
+ */
+public class LeaderboardService {
+    public static final double DEFAULT_ALPHA = 0.2;
+    static final long GAP_WINDOW = 1_000;
+
+    private final RaceResultRepository repository;
+    private final double alpha;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<Stats> stats = new IntObjectMap<>();
+    private final RankTree ranking = new RankTree();
+    /** Every position up to here has been applied (or given up on). */
+    private long settled;
+    /** Positions above {@link #settled} already applied. */
+    private final TreeSet<Long> appliedAbove = new TreeSet<>();
+
+    private static final class Stats {
+        double best = Double.POSITIVE_INFINITY;
+        int races;
+        double average;
+    }
+
+    public LeaderboardService(RaceResultRepository repository) {
+        this(repository, DEFAULT_ALPHA);
+    }
+
+    /**
+     * @param alpha weight of the newest race in the average, in (0, 1]; 1 keeps only the last race
+     */
+    public LeaderboardService(RaceResultRepository repository, double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) throw new IllegalArgumentException("alpha must be in (0, 1]");
+        this.repository = Objects.requireNonNull(repository, "repository");
+        this.alpha = alpha;
+        refresh();
+    }
+
+    /**
+     * Persist a batch of lane results (one repository write) and update the leaderboard.
+     */
+    public void record(List<RaceResult> results) {
+        if (results.isEmpty()) return;
+        repository.saveAll(results);
+        refresh();
+    }
+
+    /**
+     * Apply the results stored since the last refresh, whoever saved them.
+     */
+    public void refresh() {
+        lock.writeLock().lock();
+        try {
+            repository.forEachAfter(settled, (position, r) -> {
+                if (position <= settled || !appliedAbove.add(position)) return;
+                apply(r);
+                settle();
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return every stored lane result of the race, in save order
+     */
+    public List<RaceResult> getResults(int raceId) {
+        return repository.findByRace(raceId);
+    }
+
+    /**
+     * @return the duck's standing, or null if it never raced
+     */
+    public DuckStanding getStanding(int duckId) {
+        lock.readLock().lock();
+        try {
+            Stats s = stats.get(duckId);
+            return s == null ? null : standing(duckId, s);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the k best ducks by best time, leader first
+     */
+    public List<DuckStanding> getTop(int k) {
+        if (k <= 0) throw new IllegalArgumentException("k must be > 0");
+        lock.readLock().lock();
+        try {
+            int n = Math.min(k, ranking.size());
+            List<DuckStanding> top = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int duckId = ranking.idAt(i);
+                Stats s = stats.get(duckId);
+                top.add(new DuckStanding(duckId, i + 1, s.best, s.races, s.average));
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return number of ducks on the leaderboard */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ranking.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Advance {@link #settled} over contiguous positions and over gaps too old to fill. Caller holds the write lock. */
+    private void settle() {
+        long giveUpBelow = appliedAbove.last() - GAP_WINDOW;
+        while (!appliedAbove.isEmpty()
+                && (appliedAbove.first() == settled + 1 || appliedAbove.first() <= giveUpBelow)) {
+            settled = appliedAbove.pollFirst();
+        }
+    }
+
+    /** Caller holds the write lock. */
+    private void apply(RaceResult r) {
+        Stats s = stats.get(r.getDuckId());
+        if (s == null) {
+            s = new Stats();
+            stats.put(r.getDuckId(), s);
+        }
+        s.races++;
+        s.average = s.races == 1 ? r.getTime() : s.average + alpha * (r.getTime() - s.average);
+        if (r.getTime() < s.best) {
+            ranking.remove(s.best, r.getDuckId());
+            s.best = r.getTime();
+            ranking.add(s.best, r.getDuckId());
+        }
+    }
+
+    private DuckStanding standing(int duckId, Stats s) {
+        return new DuckStanding(duckId, ranking.rank(s.best, duckId) + 1, s.best, s.races, s.average);
+    }
+}
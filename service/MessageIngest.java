@@ -0,0 +1,162 @@
+package service;
+
+import domain.Message;
+import errors.RepoError;
+import repo.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group commit for outgoing messages.
+ *
+ * Senders hand messages in through {@link #submit} and get a future. A single background writer
+ * takes the first pending message, keeps collecting for at most the linger time (or until a
+ * batch is full), and stores the whole batch with one {@link MessageRepository#saveAll} call,
+ * i.e. one transaction. Each future is then completed with its saved message, which carries the
+ * generated id. If a batch fails, its messages are retried one by one so a single bad message
+ * only fails its own sender.
+ */
+public class MessageIngest implements AutoCloseable {
+    private static final long POLL_MS = 100;
+
+    private record Pending(Message message, CompletableFuture<Message> result) {}
+
+    private final MessageRepository messageRepository;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param messageRepository where messages are stored
+     * @param capacity          maximum pending messages before senders block
+     * @param maxBatch          maximum messages stored per transaction
+     * @param lingerMillis      how long the writer waits for more messages after the first one
+     */
+    public MessageIngest(MessageRepository messageRepository, int capacity, int maxBatch, long lingerMillis) {
+        if (capacity <= 0 || maxBatch <= 0) throw new IllegalArgumentException("capacity and maxBatch must be > 0");
+        if (lingerMillis < 0) throw new IllegalArgumentException("lingerMillis must be >= 0");
+        this.messageRepository = Objects.requireNonNull(messageRepository, "messageRepository");
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.writer = new Thread(this::writeLoop, "message-ingest");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a message for the next batch.
+     *
+     * @return future completed with the saved message, or exceptionally with the save error
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        Objects.requireNonNull(message, "message");
+        if (!running) throw new IllegalStateException("message ingest is closed");
+        Pending p = new Pending(message, new CompletableFuture<>());
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for queue space");
+        }
+        return p.result();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) continue;
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, new RepoError("Message ingest interrupted"));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Pending p : batch) messages.add(p.message());
+        List<Message> stored;
+        try {
+            stored = messageRepository.saveAll(messages);
+        } catch (RuntimeException ex) {
+            writeOneByOne(batch);
+            return;
+        }
+        batches.incrementAndGet();
+        saved.addAndGet(stored.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(stored.get(i));
+        }
+    }
+
+    private void writeOneByOne(List<Pending> batch) {
+        for (Pending p : batch) {
+            try {
+                p.result().complete(messageRepository.save(p.message()));
+                saved.incrementAndGet();
+            } catch (RuntimeException ex) {
+                failed.incrementAndGet();
+                p.result().completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void fail(List<Pending> batch, RuntimeException ex) {
+        for (Pending p : batch) {
+            if (p.result().completeExceptionally(ex)) failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop accepting messages and wait for the pending ones to be stored.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+
+    /** @return messages stored so far */
+    public long getSavedCount() { return saved.get(); }
+
+    /** @return transactions that stored a whole batch */
+    public long getBatchCount() { return batches.get(); }
+
+    public long getFailedCount() { return failed.get(); }
+}
@@ -5,16 +5,27 @@ import errors.RepoError;
 import errors.ValidationError;
 import repo.EventRepository;
 import repo.UserRepository;
-import repo.PostgresUserRepository; // added
-import repo.PostgresEventRepository;
+import repo.CachingUserRepository;
 import repo.CardRepository;
 import repo.MessageRepository;
+import repo.InMemoryNotificationRepository;
+import repo.InMemoryRaceResultRepository;
+import repo.NotificationRepository;
+import repo.PostgresChangeListener;
+import repo.RaceResultRepository;
+import util.OptimizationStrategy;
 import util.PageResult;
+import util.SortMatchSwimOptimizer;
 import util.Algorithms;
 import util.PasswordHasher;
 import validator.ValidationStrategy;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * Service layer that orchestrates repository access, validation and business
@@ -25,9 +36,16 @@ public class NetworkService {
     private EventRepository eventRepository;
     private ValidationStrategy<Persoana> persoanaValidator;
     private ValidationStrategy<Duck> duckValidator;
-    private final Map<Integer, Card> cards = new HashMap<>();
+    private final Map<Integer, Card> cards = new ConcurrentHashMap<>();
     private final CardRepository cardRepository;
     private final MessageRepository messageRepository;
+    private final InboxService inboxService;
+    private final NotificationDispatcher notificationDispatcher;
+    private final MessageIngest messageIngest;
+    private final LeaderboardService leaderboard;
+    private final RaceEngine raceEngine;
+    private final TournamentScheduler tournamentScheduler;
+    private OptimizationStrategy raceOptimizer = new SortMatchSwimOptimizer();
 
     /**
      * Construct the NetworkService with required dependencies.
@@ -40,12 +58,39 @@ public class NetworkService {
      * @param messageRepository repository for messages
      */
     public NetworkService(UserRepository userRepository, EventRepository eventRepository, ValidationStrategy<Persoana> persoanaValidator, ValidationStrategy<Duck> duckValidator, CardRepository cardRepository, MessageRepository messageRepository) {
+        this(userRepository, eventRepository, persoanaValidator, duckValidator, cardRepository, messageRepository,
+                new InMemoryNotificationRepository());
+    }
+
+    /**
+     * Construct the NetworkService with a persistent notification inbox store.
+     *
+     * @param notificationRepository repository for per-user notification inboxes
+     */
+    public NetworkService(UserRepository userRepository, EventRepository eventRepository, ValidationStrategy<Persoana> persoanaValidator, ValidationStrategy<Duck> duckValidator, CardRepository cardRepository, MessageRepository messageRepository, NotificationRepository notificationRepository) {
+        this(userRepository, eventRepository, persoanaValidator, duckValidator, cardRepository, messageRepository,
+                notificationRepository, new InMemoryRaceResultRepository());
+    }
+
+    /**
+     * Construct the NetworkService with a persistent race results store.
+     *
+     * @param raceResultRepository repository for race lane results (the leaderboard is rebuilt from it)
+     */
+    public NetworkService(UserRepository userRepository, EventRepository eventRepository, ValidationStrategy<Persoana> persoanaValidator, ValidationStrategy<Duck> duckValidator, CardRepository cardRepository, MessageRepository messageRepository, NotificationRepository notificationRepository, RaceResultRepository raceResultRepository) {
         this.userRepository = userRepository;
         this.eventRepository = eventRepository;
         this.persoanaValidator = persoanaValidator;
         this.duckValidator = duckValidator;
         this.cardRepository = cardRepository;
         this.messageRepository = messageRepository;
+        this.inboxService = new InboxService(notificationRepository, 10_000, 50);
+        this.notificationDispatcher = new NotificationDispatcher(eventRepository, inboxService, 10_000, 500);
+        this.messageIngest = new MessageIngest(messageRepository, 10_000, 500, 5);
+        this.leaderboard = new LeaderboardService(raceResultRepository);
+        this.raceEngine = new RaceEngine(eventRepository, userRepository, notificationDispatcher, leaderboard,
+                ForkJoinPool.commonPool(), SortMatchSwimOptimizer::new);
+        this.tournamentScheduler = new TournamentScheduler(leaderboard, ForkJoinPool.commonPool(), SortMatchSwimOptimizer::new);
         if(cardRepository != null){
             for (Card card : cardRepository.findAll()) {
                 cards.put(card.getId(), card);
@@ -53,6 +98,61 @@ public class NetworkService {
         }
     }
 
+    /**
+     * Apply a write made by another instance (delivered by {@link PostgresChangeListener}) to the
+     * local caches: cached users and inbox buffers are invalidated, affected cards are reloaded,
+     * and the leaderboard and message search pick up new race results and messages.
+     *
+     * @param change the change notification
+     */
+    public void applyExternalChange(PostgresChangeListener.Change change) {
+        CachingUserRepository cache = userRepository instanceof CachingUserRepository cu ? cu : null;
+        switch (change.entity()) {
+            case "user" -> {
+                if (cache != null) cache.invalidate(change.id());
+            }
+            case "friend" -> {
+                if (cache != null) {
+                    cache.invalidate(change.id());
+                    cache.invalidate(change.otherId());
+                }
+            }
+            case "card" -> reloadCard(change.id());
+            case "inbox" -> inboxService.invalidate(change.id());
+            // subscribers are not known here; broadcasts are rare enough to drop every buffer
+            case "broadcast" -> inboxService.invalidateAll();
+            case "results" -> leaderboard.refresh();
+            case "messages" -> messageRepository.indexMessages(change.id(), change.otherId());
+            case PostgresChangeListener.RESET -> {
+                if (cache != null) cache.invalidateAll();
+                reloadAllCards();
+                inboxService.invalidateAll();
+                leaderboard.refresh();
+            }
+            default -> { } // events are loaded fresh on every access
+        }
+    }
+
+    private void reloadCard(int cardId) {
+        if (cardRepository == null) return;
+        Card fresh = cardRepository.findOne(cardId);
+        if (fresh == null) {
+            cards.remove(cardId);
+        } else {
+            cards.put(cardId, fresh);
+        }
+    }
+
+    private void reloadAllCards() {
+        if (cardRepository == null) return;
+        Map<Integer, Card> fresh = new HashMap<>();
+        for (Card card : cardRepository.findAll()) {
+            fresh.put(card.getId(), card);
+        }
+        cards.keySet().retainAll(fresh.keySet());
+        cards.putAll(fresh);
+    }
+
     /**
      * Add a new user to the network after validating it.
      *
@@ -113,13 +213,11 @@ public class NetworkService {
      * @throws RepoError when the user does not exist
      */
     public User removeUser(Integer id){
+        // the repository drops the user's friendships with it (ON DELETE CASCADE on user_friend)
         User userToRemove=userRepository.delete(id);
         if(userToRemove==null){
             throw new RepoError("User with id "+id+" not found");
         }
-        for (User u: userRepository.findAll()) {
-            u.removeFriend(userToRemove);
-        }
         // also remove from cards if it's a Duck
         if (userToRemove instanceof Duck) {
             Duck d = (Duck) userToRemove;
@@ -151,9 +249,7 @@ public class NetworkService {
         }
         user1.addFriend(user2);
         user2.addFriend(user1);
-        if(userRepository instanceof PostgresUserRepository pr){
-            pr.saveFriendship(id1, id2);
-        }
+        userRepository.saveFriendship(id1, id2);
     }
 
     /**
@@ -171,9 +267,64 @@ public class NetworkService {
         if(user2!=null){
             user2.removeFriend(user1);
         }
-        if(userRepository instanceof PostgresUserRepository pr){
-            pr.deleteFriendship(id1, id2);
+        userRepository.deleteFriendship(id1, id2);
+    }
+
+    /**
+     * Create many mutual friendships at once. All ids are checked with one batched lookup before
+     * anything is written; the pairs are then persisted in a single repository call.
+     *
+     * @param pairs friendships as {id1, id2}
+     * @throws RepoError when any user is not found or a pair names the same user twice
+     */
+    public void addFriendships(Collection<int[]> pairs){
+        Map<Integer, User> users = requireUsers(pairs);
+        for (int[] pair : pairs) {
+            User user1 = users.get(pair[0]);
+            User user2 = users.get(pair[1]);
+            user1.addFriend(user2);
+            user2.addFriend(user1);
         }
+        userRepository.saveFriendships(pairs);
+    }
+
+    /**
+     * Remove many mutual friendships at once; pairs naming unknown users are ignored.
+     *
+     * @param pairs friendships as {id1, id2}
+     */
+    public void removeFriendships(Collection<int[]> pairs){
+        Map<Integer, User> users = userRepository.findByIds(idsOf(pairs));
+        for (int[] pair : pairs) {
+            User user1 = users.get(pair[0]);
+            User user2 = users.get(pair[1]);
+            if (user1 != null && user2 != null) {
+                user1.removeFriend(user2);
+                user2.removeFriend(user1);
+            }
+        }
+        userRepository.deleteFriendships(pairs);
+    }
+
+    private Map<Integer, User> requireUsers(Collection<int[]> pairs) {
+        Map<Integer, User> users = userRepository.findByIds(idsOf(pairs));
+        for (int[] pair : pairs) {
+            if (pair[0] == pair[1]) throw new RepoError("Cannot friend self");
+            for (int id : pair) {
+                if (!users.containsKey(id)) throw new RepoError("User with id " + id + " not found");
+            }
+        }
+        return users;
+    }
+
+    private static Set<Integer> idsOf(Collection<int[]> pairs) {
+        Set<Integer> ids = new HashSet<>();
+        for (int[] pair : pairs) {
+            if (pair == null || pair.length != 2) throw new IllegalArgumentException("friendship pair must have two ids");
+            ids.add(pair[0]);
+            ids.add(pair[1]);
+        }
+        return ids;
     }
 
     /**
@@ -196,6 +347,15 @@ public class NetworkService {
         return userRepository.findDuckPage(pageIndex, pageSize, filter);
     }
 
+    /**
+     * Keyset variant of {@link #getDucksPage(int, int, TipRata)}; cost does not grow with the page number.
+     *
+     * @param afterId cursor of the previous page ({@link PageResult#getNextCursor()}), null for the first page
+     */
+    public PageResult<Duck> getDucksPage(int pageIndex, int pageSize, TipRata filter, Integer afterId) {
+        return userRepository.findDuckPage(pageIndex, pageSize, filter, afterId);
+    }
+
     public Iterable<Duck> getAllDucks() {
         return userRepository.findAllDucks();
     }
@@ -328,7 +488,7 @@ public class NetworkService {
      * @return created {@link RaceEvent} with a DB-generated id
      */
     public RaceEvent createRaceEvent(String name, int lanes){
-        // temporary id; PostgresEventRepository should ignore/use its own sequence
+        // temporary id; the repository ignores it and assigns its own
         RaceEvent re = new RaceEvent(-1, name, lanes);
         eventRepository.save(re);
         return re;
@@ -351,9 +511,7 @@ public class NetworkService {
         User u = userRepository.findOne(userId);
         if(u==null) throw new RepoError("User not found");
         e.subscribe(u);
-        if(eventRepository instanceof PostgresEventRepository pe){
-            pe.addSubscriber(eventId, userId);
-        }
+        eventRepository.addSubscriber(eventId, userId);
     }
 
     /**
@@ -368,15 +526,15 @@ public class NetworkService {
         User u = userRepository.findOne(userId);
         if(u!=null) {
             e.unsubscribe(u);
-            if(eventRepository instanceof PostgresEventRepository pe){
-                pe.removeSubscriber(eventId, userId);
-            }
+            eventRepository.removeSubscriber(eventId, userId);
         }
     }
 
     /**
-     * Run a race event identified by id. It gathers all users that are both Duck and Inotator,
-     * selects up to M participants, runs the optimizer and returns a textual report.
+     * Run a race event identified by id. It loads the M fastest swimming ducks (Inotator),
+     * selects them as participants, runs the optimizer, stores the lane results and returns a
+     * textual report. The race's notifications are queued on the {@link NotificationDispatcher},
+     * so the call does not wait for subscriber delivery or the notification log write.
      *
      * @param eventId the race event id
      * @return list of report lines (one per lane + minimal total time)
@@ -385,20 +543,97 @@ public class NetworkService {
         Event ev = eventRepository.findOne(eventId);
         if(!(ev instanceof RaceEvent)) throw new RepoError("Event is not a race");
         RaceEvent re = (RaceEvent) ev;
-        List<Duck> allDucks = new ArrayList<>();
-        for (Duck duck : userRepository.findAllDucks()) {
-            if (duck instanceof Inotator) {
-                allDucks.add(duck);
-            }
-        }
-        re.selectParticipants(allDucks);
+        // only the M fastest swimmers can be picked, so only those are loaded
+        List<Duck> candidates = userRepository.findTopSwimmers(re.getLanes());
+        // persistence and per-subscriber delivery happen on the dispatcher's writer thread
+        re.setNotificationListener(notificationDispatcher);
+        re.setOptimizationStrategy(raceOptimizer);
+        re.selectParticipants(candidates);
         List<String> report = re.runRaceAndReport();
-        if(eventRepository instanceof PostgresEventRepository pe){
-            pe.addNotification(eventId, "Race finished. Results available.");
-        }
+        leaderboard.record(re.getResults());
         return report;
     }
 
+    /**
+     * Choose the lane assignment strategy used by {@link #runRace(int)}; the default is the exact
+     * {@link SortMatchSwimOptimizer}, {@link util.BinarySearchSwimOptimizer} is kept for comparison.
+     * {@link util.MinTotalTimeSwimOptimizer} minimises the sum of lane times instead of the slowest lane.
+     */
+    public void setRaceOptimizer(OptimizationStrategy raceOptimizer) {
+        this.raceOptimizer = Objects.requireNonNull(raceOptimizer, "raceOptimizer");
+    }
+
+    /**
+     * Run many race events in parallel, loading the swimmer pool once for the whole batch.
+     * Notifications are queued on the {@link NotificationDispatcher} like in {@link #runRace(int)}.
+     *
+     * @param eventIds race event ids
+     * @return per-race reports (or errors) and the batch throughput in races/second
+     */
+    public RaceEngine.BatchResult runRaces(Collection<Integer> eventIds){
+        return raceEngine.runAll(eventIds);
+    }
+
+    /**
+     * Run a knock-out tournament over the fastest swimmers: heats of distances.length ducks,
+     * the best {@code advance} of each heat go through, until one final heat is left. The
+     * tournament is stored as a race event that owns all heat results; each result carries its
+     * round and heat number.
+     *
+     * @param name        name of the race event created for the tournament
+     * @param distances   per-lane distances (at least 2 lanes)
+     * @param advance     ducks going through from each heat (1 <= advance < lanes)
+     * @param maxEntrants how many of the fastest swimmers take part
+     * @return the final's results and tournament statistics
+     */
+    public TournamentScheduler.TournamentResult runTournament(String name, double[] distances, int advance, int maxEntrants){
+        if (distances == null || distances.length < 2) throw new ValidationError("a tournament needs at least 2 lanes");
+        if (advance < 1 || advance >= distances.length) throw new ValidationError("advance must be between 1 and lanes - 1");
+        if (maxEntrants <= 0) throw new ValidationError("maxEntrants must be > 0");
+        // everything that can fail before the race runs happens before the event is stored
+        List<Duck> field = userRepository.findTopSwimmers(maxEntrants);
+        RaceEvent re = createRaceEvent(name, distances.length);
+        return tournamentScheduler.run(re.getId(), field, distances.clone(), advance);
+    }
+
+    /**
+     * @return every stored lane result of the race, over all its runs (for a tournament, every
+     *         heat; see {@link RaceResult#getRound()} and {@link RaceResult#getHeat()})
+     */
+    public List<RaceResult> getRaceResults(int eventId){
+        return leaderboard.getResults(eventId);
+    }
+
+    /**
+     * @return the duck's leaderboard standing (rank, best time, races run, average time),
+     *         or null if it never raced
+     */
+    public DuckStanding getDuckStanding(int duckId){
+        return leaderboard.getStanding(duckId);
+    }
+
+    /**
+     * @return the k ducks with the best race times, leader first
+     */
+    public List<DuckStanding> getLeaderboard(int k){
+        return leaderboard.getTop(k);
+    }
+
+    /**
+     * Choose the lane assignment strategy used by {@link #runRaces(Collection)}. Races run on
+     * several threads, so a factory is given and each thread gets its own instance.
+     */
+    public void setBatchRaceOptimizer(Supplier<? extends OptimizationStrategy> optimizers) {
+        raceEngine.setOptimizers(optimizers);
+    }
+
+    /**
+     * @return the asynchronous notification dispatcher (queue depth and backpressure metrics)
+     */
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
     /**
      * Configure lane distances for a race event.
      *
@@ -412,16 +647,41 @@ public class NetworkService {
     }
 
     /**
-     * Get the notifications received by a specific user.
+     * Get the most recent notifications received by a specific user, oldest first.
      *
      * @param userId id of the user
-     * @return unmodifiable list of messages
+     * @return unmodifiable list of messages (at most one inbox page)
      * @throws RepoError if the user is not found
      */
     public List<String> getUserNotifications(int userId){
         User u = userRepository.findOne(userId);
         if(u==null) throw new RepoError("User not found");
-        return u.getNotifications();
+        List<String> messages = new ArrayList<>();
+        for (Notification n : inboxService.getInbox(userId, 50, null).getItems()) {
+            messages.add(n.getMessage());
+        }
+        Collections.reverse(messages);
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Newest-first keyset page of a user's notification inbox.
+     *
+     * @param beforeId next cursor of the previous page, or null for the newest page
+     */
+    public PageResult<Notification> getInbox(int userId, int pageSize, Integer beforeId){
+        return inboxService.getInbox(userId, pageSize, beforeId);
+    }
+
+    public int getUnreadNotificationCount(int userId){
+        return inboxService.getUnreadCount(userId);
+    }
+
+    /**
+     * Mark every notification currently in the user's inbox as read.
+     */
+    public void markNotificationsRead(int userId){
+        inboxService.markAllRead(userId);
     }
 
     public void addFriendshipByEmail(String emailA, String emailB) {
@@ -451,13 +711,14 @@ public class NetworkService {
         return userRepository.findByEmail(email.toLowerCase());
     }
 
+    /**
+     * Load a user with its friend list straight from the repository.
+     *
+     * @param userId id of the user
+     * @return the user or null if not found
+     */
     public User reloadUser(int userId) {
-        for (User user : userRepository.findAll()) {
-            if (user.getId() == userId) {
-                return user;
-            }
-        }
-        return null;
+        return userRepository.findWithFriends(userId);
     }
 
     public List<User> getFriendsFor(int userId) {
@@ -468,17 +729,97 @@ public class NetworkService {
         return new ArrayList<>(user.getFriends());
     }
 
+    /**
+     * Send a message and wait until it is stored. Concurrent sends are stored together by the
+     * {@link MessageIngest} group commit.
+     *
+     * @return the saved message, with its generated id
+     */
     public Message sendMessage(User from, List<User> to, String text) {
-        Message message = new Message(-1, from, to, text, java.time.LocalDateTime.now());
-        return messageRepository.save(message);
+        return await(sendMessageAsync(from, to, text));
     }
 
     public Message replyMessage(User from, List<User> to, String text, Message replyTo) {
-        Message reply = new Message(-1, from, to, text, java.time.LocalDateTime.now(), replyTo);
-        return messageRepository.saveReply(reply);
+        return await(replyMessageAsync(from, to, text, replyTo));
+    }
+
+    /**
+     * Queue a message for the next group commit.
+     *
+     * @return future completed with the saved message
+     */
+    public CompletableFuture<Message> sendMessageAsync(User from, List<User> to, String text) {
+        return messageIngest.submit(new Message(-1, from, to, text, java.time.LocalDateTime.now()));
+    }
+
+    public CompletableFuture<Message> replyMessageAsync(User from, List<User> to, String text, Message replyTo) {
+        return messageIngest.submit(new Message(-1, from, to, text, java.time.LocalDateTime.now(), replyTo));
+    }
+
+    /**
+     * @return the message group-commit pipeline (batch and failure counters)
+     */
+    public MessageIngest getMessageIngest() {
+        return messageIngest;
+    }
+
+    private static Message await(CompletableFuture<Message> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
     }
 
     public List<Message> getConversation(int userId, int otherUserId) {
         return messageRepository.findConversation(userId, otherUserId);
     }
+
+    /**
+     * A message with the whole chain of messages it replies to, oldest first, in one load.
+     */
+    public List<Message> getThread(int messageId) {
+        return messageRepository.findThread(messageId);
+    }
+
+    /**
+     * Messages of a conversation newer than the last one the caller has, oldest first.
+     */
+    public List<Message> getConversationSince(int userId, int otherUserId, int lastMessageId) {
+        return messageRepository.findConversationSince(userId, otherUserId, lastMessageId);
+    }
+
+    /**
+     * Older history of a conversation, one page at a time, oldest first.
+     *
+     * @param beforeId id of the oldest message already shown, or null for the latest page
+     */
+    public List<Message> getConversationBefore(int userId, int otherUserId, Integer beforeId, int limit) {
+        return messageRepository.findConversationBefore(userId, otherUserId, beforeId, limit);
+    }
+
+    /**
+     * Search the messages a user sent or received, newest first.
+     *
+     * @param query words (all must match), word* for a prefix, "quoted words" for a phrase
+     */
+    public List<Message> searchMessages(int userId, String query, int limit) {
+        return messageRepository.search(userId, query, limit);
+    }
+
+    /**
+     * Chat inbox of a user: each conversation partner with the latest message and unread count,
+     * newest conversation first, loaded in one query.
+     */
+    public List<ConversationSummary> getInboxSummary(int userId) {
+        return messageRepository.findInboxSummary(userId);
+    }
+
+    /**
+     * Record that the user has read the partner's messages up to the given message id.
+     */
+    public void markConversationRead(int userId, int partnerId, int upToMessageId) {
+        messageRepository.markConversationRead(userId, partnerId, upToMessageId);
+    }
 }
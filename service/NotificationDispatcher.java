@@ -0,0 +1,226 @@
+package service;
+
+import domain.Event;
+import domain.NotificationListener;
+import domain.User;
+import errors.RepoError;
+import repo.EventRepository;
+import repo.NotificationRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind delivery of event notifications.
+ *
+ * Any number of threads hand notifications in through {@link #onNotification}; they only
+ * copy the subscriber ids and enqueue. A single background writer drains the bounded queue in
+ * batches, persists each batch with one {@link EventRepository#addNotifications} call per event
+ * and then delivers the whole batch to the subscribers' inboxes with one
+ * {@link InboxService#deliver} call. When the queue is full producers block until the
+ * writer catches up (backpressure); how often and for how long is exposed as metrics together
+ * with queue depth, throughput and failures. Failed writes have no caller left to throw to; they
+ * are counted, kept as {@link #getLastFailure()} and passed to the failure handler, if one is set.
+ */
+public class NotificationDispatcher implements NotificationListener, AutoCloseable {
+    private static final long POLL_MS = 100;
+
+    /**
+     * One queued broadcast. Subscribers are reduced to ids so the writer never touches entity
+     * objects owned by the caller.
+     */
+    private record Notification(int eventId, String message, int[] recipientIds) {}
+
+    private final EventRepository eventRepository;
+    private final InboxService inboxService;
+    private final BlockingQueue<Notification> queue;
+    private final int capacity;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private volatile RepoError lastFailure;
+    private volatile Consumer<RepoError> failureHandler;
+
+    /**
+     * @param eventRepository where notification logs are persisted
+     * @param inboxService    where subscribers' inboxes are kept
+     * @param capacity        maximum queued notifications before producers block
+     * @param maxBatch        maximum notifications written per batch
+     */
+    public NotificationDispatcher(EventRepository eventRepository, InboxService inboxService, int capacity, int maxBatch) {
+        if (capacity <= 0 || maxBatch <= 0) throw new IllegalArgumentException("capacity and maxBatch must be > 0");
+        this.eventRepository = Objects.requireNonNull(eventRepository, "eventRepository");
+        this.inboxService = Objects.requireNonNull(inboxService, "inboxService");
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeLoop, "notification-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void onNotification(Event event, List<User> subscribers, String message) {
+        int[] ids = new int[subscribers.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = subscribers.get(i).getId();
+        }
+        enqueue(new Notification(event.getId(), message, ids));
+    }
+
+    private void enqueue(Notification n) {
+        if (!running) throw new IllegalStateException("dispatcher is closed");
+        if (!queue.offer(n)) {
+            blocked.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                queue.put(n);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for queue space");
+            } finally {
+                blockedNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+        enqueued.incrementAndGet();
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    private void writeLoop() {
+        List<Notification> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Notification first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                processed.addAndGet(batch.size());
+                batch.clear();
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(List<Notification> batch) {
+        Map<Integer, List<String>> byEvent = new LinkedHashMap<>();
+        for (Notification n : batch) {
+            byEvent.computeIfAbsent(n.eventId(), k -> new ArrayList<>()).add(n.message());
+        }
+        for (Map.Entry<Integer, List<String>> e : byEvent.entrySet()) {
+            try {
+                eventRepository.addNotifications(e.getKey(), e.getValue());
+            } catch (RuntimeException ex) {
+                failed.addAndGet(e.getValue().size());
+                report(new RepoError("Notification write failed for event " + e.getKey() + ": " + ex.getMessage()));
+            }
+        }
+        List<NotificationRepository.Delivery> deliveries = new ArrayList<>(batch.size());
+        for (Notification n : batch) {
+            deliveries.add(new NotificationRepository.Delivery(n.eventId(), n.message(), n.recipientIds()));
+        }
+        try {
+            inboxService.deliver(deliveries);
+        } catch (RuntimeException ex) {
+            failed.addAndGet(batch.size());
+            report(new RepoError("Inbox delivery failed: " + ex.getMessage()));
+        }
+        batches.incrementAndGet();
+    }
+
+    private void report(RepoError failure) {
+        lastFailure = failure;
+        Consumer<RepoError> handler = failureHandler;
+        if (handler == null) return;
+        try {
+            handler.accept(failure);
+        } catch (RuntimeException ignored) {
+            // a broken handler must not stop the writer
+        }
+    }
+
+    /**
+     * Receive every write failure, on the writer thread (null: only count and keep the last one).
+     */
+    public void setFailureHandler(Consumer<RepoError> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Wait until everything enqueued so far has been written.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long target = enqueued.get();
+        synchronized (this) {
+            while (processed.get() < target) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                wait(left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting notifications and wait for the queue to be written out.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+
+    public int getCapacity() { return capacity; }
+
+    /** @return highest queue depth observed */
+    public long getMaxDepth() { return maxDepth.get(); }
+
+    public long getEnqueuedCount() { return enqueued.get(); }
+
+    /** @return notifications taken off the queue and handled (written or failed) */
+    public long getProcessedCount() { return processed.get(); }
+
+    public long getBatchCount() { return batches.get(); }
+
+    public long getFailedCount() { return failed.get(); }
+
+    /** @return the most recent write failure, or null if none happened */
+    public RepoError getLastFailure() { return lastFailure; }
+
+    /** @return number of enqueues that found the queue full and had to wait */
+    public long getBlockedCount() { return blocked.get(); }
+
+    /** @return total time producers spent waiting for queue space */
+    public long getBlockedNanos() { return blockedNanos.get(); }
+}
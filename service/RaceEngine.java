@@ -0,0 +1,149 @@
+package service;
+
+import domain.Duck;
+import domain.Event;
+import domain.NotificationListener;
+import domain.RaceEvent;
+import domain.RaceResult;
+import repo.EventRepository;
+import repo.UserRepository;
+import util.OptimizationStrategy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Runs many race events in one go.
+ *
+ * Every race picks the fastest swimmers, so one pool of the fastest {@code max(lanes)} swimmers,
+ * loaded once per batch with {@link UserRepository#findTopSwimmers}, serves all races (instead
+ * of one load per race as in {@link NetworkService#runRace}). Events are loaded up front on the
+ * calling thread, since repositories may share a single connection; the races themselves
+ * (participant selection and optimizer) then run as independent tasks on a {@link ForkJoinPool}. Notifications go to one shared {@link NotificationListener}, normally
+ * the {@link NotificationDispatcher}, which persists and delivers them in batches. The lane
+ * results of the whole batch are stored with one {@link LeaderboardService#record} call.
+ *
+ * Optimizers may keep scratch state, so every worker thread gets its own instance from the
+ * supplied factory.
+ */
+public class RaceEngine {
+    private final EventRepository eventRepository;
+    private final UserRepository userRepository;
+    private final NotificationListener notificationListener;
+    private final LeaderboardService leaderboard;
+    private final ForkJoinPool pool;
+    private volatile Supplier<? extends OptimizationStrategy> optimizers;
+
+    /**
+     * Result of one race: the report lines and lane results, or the error message if the race
+     * failed.
+     */
+    public record RaceOutcome(int eventId, List<String> report, List<RaceResult> results, String error) {
+        public boolean succeeded() { return error == null; }
+    }
+
+    /**
+     * Outcomes of a batch, in the order the event ids were given, with its timing.
+     */
+    public record BatchResult(Map<Integer, RaceOutcome> outcomes, int swimmers, long elapsedNanos) {
+        public int getRaceCount() { return outcomes.size(); }
+
+        public long getFailedCount() {
+            return outcomes.values().stream().filter(o -> !o.succeeded()).count();
+        }
+
+        /** @return races run per second over the whole batch, loading included */
+        public double getRacesPerSecond() {
+            return elapsedNanos == 0 ? 0 : outcomes.size() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d races (%d failed), %d swimmers, %.1f ms, %.1f races/s",
+                    getRaceCount(), getFailedCount(), swimmers, elapsedNanos / 1e6, getRacesPerSecond());
+        }
+    }
+
+    /**
+     * @param notificationListener receives every race notification; must be thread-safe
+     * @param leaderboard          stores the lane results
+     * @param pool                 pool the races run on
+     * @param optimizers           creates one lane assignment strategy per worker thread
+     */
+    public RaceEngine(EventRepository eventRepository, UserRepository userRepository, NotificationListener notificationListener,
+                      LeaderboardService leaderboard, ForkJoinPool pool, Supplier<? extends OptimizationStrategy> optimizers) {
+        this.eventRepository = Objects.requireNonNull(eventRepository, "eventRepository");
+        this.userRepository = Objects.requireNonNull(userRepository, "userRepository");
+        this.notificationListener = Objects.requireNonNull(notificationListener, "notificationListener");
+        this.leaderboard = Objects.requireNonNull(leaderboard, "leaderboard");
+        this.pool = Objects.requireNonNull(pool, "pool");
+        this.optimizers = Objects.requireNonNull(optimizers, "optimizers");
+    }
+
+    /**
+     * Set the factory used for the next batches.
+     */
+    public void setOptimizers(Supplier<? extends OptimizationStrategy> optimizers) {
+        this.optimizers = Objects.requireNonNull(optimizers, "optimizers");
+    }
+
+    /**
+     * Run the given race events in parallel and store all their lane results at the end.
+     * Duplicate ids run once; ids that are not race events get a failed outcome instead of
+     * aborting the batch.
+     *
+     * @param eventIds race event ids
+     * @return per-race outcomes and throughput
+     */
+    public BatchResult runAll(Collection<Integer> eventIds) {
+        long start = System.nanoTime();
+        Map<Integer, RaceOutcome> outcomes = new LinkedHashMap<>();
+        List<RaceEvent> races = new ArrayList<>();
+        for (int id : new LinkedHashSet<>(eventIds)) {
+            Event ev = eventRepository.findOne(id);
+            if (ev instanceof RaceEvent re) {
+                races.add(re);
+                outcomes.put(id, null);
+            } else {
+                outcomes.put(id, new RaceOutcome(id, List.of(), List.of(), "Event is not a race"));
+            }
+        }
+        int maxLanes = races.stream().mapToInt(RaceEvent::getLanes).max().orElse(0);
+        List<Duck> swimmers = maxLanes == 0 ? List.of() : userRepository.findTopSwimmers(maxLanes);
+
+        ThreadLocal<OptimizationStrategy> optimizer = ThreadLocal.withInitial(optimizers);
+        List<ForkJoinTask<RaceOutcome>> tasks = new ArrayList<>(races.size());
+        for (RaceEvent re : races) {
+            tasks.add(pool.submit(() -> run(re, swimmers, optimizer.get())));
+        }
+        List<RaceResult> results = new ArrayList<>();
+        for (ForkJoinTask<RaceOutcome> task : tasks) {
+            RaceOutcome outcome = task.join();
+            outcomes.put(outcome.eventId(), outcome);
+            results.addAll(outcome.results());
+        }
+        leaderboard.record(results);
+        return new BatchResult(Collections.unmodifiableMap(outcomes), swimmers.size(), System.nanoTime() - start);
+    }
+
+    private RaceOutcome run(RaceEvent re, List<Duck> swimmers, OptimizationStrategy optimizer) {
+        try {
+            re.setNotificationListener(notificationListener);
+            re.setOptimizationStrategy(optimizer);
+            re.selectParticipants(swimmers);
+            List<String> report = re.runRaceAndReport();
+            return new RaceOutcome(re.getId(), report, re.getResults(), null);
+        } catch (RuntimeException e) {
+            return new RaceOutcome(re.getId(), List.of(), List.of(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package service;
+
+import domain.Duck;
+import domain.RaceResult;
+import util.OptimizationStrategy;
+import util.SolveResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Knock-out tournament for fields with many more swimmers than lanes.
+ *
+ * Each round splits the field into heats of at most {@code lanes} ducks, seeded round-robin by
+ * speed (the field is given fastest first) so heats are evenly matched. Every heat is a race:
+ * the {@link OptimizationStrategy} assigns its ducks to lanes and the {@code advance} ducks with
+ * the best lane times go through (fewer in a short heat, which always eliminates someone).
+ * Rounds repeat until the field fits into one final heat.
+ *
+ * The heats of a round are independent and run on a {@link ForkJoinPool} as recursively split
+ * ranges; each worker thread uses its own optimizer from the factory. All lane results of all
+ * rounds are stored at the end with one {@link LeaderboardService#record} call, under the id of
+ * the event that owns the tournament and tagged with their round and heat number
+ * ({@link RaceResult#getRound()}, {@link RaceResult#getHeat()}), so every heat can be told apart.
+ */
+public class TournamentScheduler {
+    /** Heats per leaf task; smaller ranges are not worth a fork. */
+    private static final int HEATS_PER_TASK = 32;
+
+    private final LeaderboardService leaderboard;
+    private final ForkJoinPool pool;
+    private final Supplier<? extends OptimizationStrategy> optimizers;
+
+    /**
+     * Final heat and statistics of a tournament.
+     *
+     * @param finalResults lane results of the final, best time first
+     */
+    public record TournamentResult(int eventId, int entrants, int rounds, int heats, List<RaceResult> finalResults,
+                                   long elapsedNanos) {
+        /** @return id of the duck with the best time in the final, or -1 without entrants */
+        public int getWinnerId() {
+            return finalResults.isEmpty() ? -1 : finalResults.get(0).getDuckId();
+        }
+
+        /** @return heats run per second, result storage included */
+        public double getHeatsPerSecond() {
+            return elapsedNanos == 0 ? 0 : heats * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entrants, %d rounds, %d heats, %.1f ms, %.1f heats/s, winner duck %d",
+                    entrants, rounds, heats, elapsedNanos / 1e6, getHeatsPerSecond(), getWinnerId());
+        }
+    }
+
+    /**
+     * @param leaderboard stores the lane results
+     * @param pool        pool the heats run on
+     * @param optimizers  creates one lane assignment strategy per worker thread
+     */
+    public TournamentScheduler(LeaderboardService leaderboard, ForkJoinPool pool, Supplier<? extends OptimizationStrategy> optimizers) {
+        this.leaderboard = Objects.requireNonNull(leaderboard, "leaderboard");
+        this.pool = Objects.requireNonNull(pool, "pool");
+        this.optimizers = Objects.requireNonNull(optimizers, "optimizers");
+    }
+
+    /**
+     * Run a tournament to its final.
+     *
+     * @param eventId   event the results are stored under
+     * @param field     entrants, fastest first (as returned by findTopSwimmers)
+     * @param distances per-lane distances; the number of lanes is distances.length
+     * @param advance   ducks going through from each heat (1 <= advance < lanes)
+     */
+    public TournamentResult run(int eventId, List<Duck> field, double[] distances, int advance) {
+        int lanes = distances.length;
+        if (lanes < 2) throw new IllegalArgumentException("a tournament needs at least 2 lanes");
+        if (advance < 1 || advance >= lanes) throw new IllegalArgumentException("advance must be between 1 and lanes - 1");
+        long start = System.nanoTime();
+        ThreadLocal<OptimizationStrategy> optimizer = ThreadLocal.withInitial(optimizers);
+        List<RaceResult> all = new ArrayList<>();
+        Duck[] current = field.toArray(new Duck[0]);
+        int rounds = 0;
+        int heats = 0;
+        List<RaceResult> finalResults = List.of();
+        while (current.length > 0) {
+            Round round = new Round(eventId, rounds + 1, current, distances, advance, optimizer);
+            pool.invoke(new HeatRange(round, 0, round.heatCount));
+            rounds++;
+            heats += round.heatCount;
+            for (List<RaceResult> heat : round.results) all.addAll(heat);
+            if (round.heatCount == 1) {
+                finalResults = round.results.get(0);
+                break;
+            }
+            current = round.advancing();
+        }
+        leaderboard.record(all);
+        return new TournamentResult(eventId, field.size(), rounds, heats, finalResults, System.nanoTime() - start);
+    }
+
+    /**
+     * One round: heat h holds the ducks at positions h, h + heatCount, h + 2 * heatCount...
+     * Each heat writes only its own slots, so heats need no locking.
+     */
+    private static final class Round {
+        final int eventId;
+        final int number;
+        final Duck[] field;
+        final double[] distances;
+        final int advance;
+        final ThreadLocal<OptimizationStrategy> optimizer;
+        final int heatCount;
+        final List<List<RaceResult>> results;
+        final Duck[][] advancers;
+
+        Round(int eventId, int number, Duck[] field, double[] distances, int advance, ThreadLocal<OptimizationStrategy> optimizer) {
+            this.eventId = eventId;
+            this.number = number;
+            this.field = field;
+            this.distances = distances;
+            this.advance = advance;
+            this.optimizer = optimizer;
+            this.heatCount = (field.length + distances.length - 1) / distances.length;
+            // pre-sized so each heat can set its own slot
+            this.results = new ArrayList<>(Collections.nCopies(heatCount, null));
+            this.advancers = new Duck[heatCount][];
+        }
+
+        void runHeat(int h) {
+            int size = (field.length - h + heatCount - 1) / heatCount;
+            Duck[] ducks = new Duck[size];
+            for (int i = 0; i < size; i++) ducks[i] = field[h + i * heatCount];
+            // a short heat uses the first lanes only
+            double[] laneDistances = size == distances.length ? distances : Arrays.copyOf(distances, size);
+            SolveResult solved = optimizer.get().computeMinTime(ducks, laneDistances);
+            Duck[] assignment = solved.getAssignments();
+            List<RaceResult> heat = new ArrayList<>(size);
+            for (int lane = 0; lane < assignment.length; lane++) {
+                Duck d = assignment[lane];
+                if (d == null) continue;
+                heat.add(new RaceResult(eventId, lane + 1, d.getId(), 2.0 * laneDistances[lane] / d.getViteza(), number, h + 1));
+            }
+            heat.sort((a, b) -> Double.compare(a.getTime(), b.getTime()));
+            results.set(h, heat);
+            // a heat always drops at least one duck, so every round shrinks the field
+            int going = heat.isEmpty() ? 0 : Math.min(advance, Math.max(1, heat.size() - 1));
+            Duck[] through = new Duck[going];
+            for (int i = 0; i < through.length; i++) {
+                int duckId = heat.get(i).getDuckId();
+                for (Duck d : ducks) {
+                    if (d.getId() == duckId) {
+                        through[i] = d;
+                        break;
+                    }
+                }
+            }
+            advancers[h] = through;
+        }
+
+        /** @return the next round's field, fastest first */
+        Duck[] advancing() {
+            List<Duck> next = new ArrayList<>(heatCount * advance);
+            for (Duck[] through : advancers) next.addAll(Arrays.asList(through));
+            next.sort((a, b) -> {
+                int c = Double.compare(b.getViteza(), a.getViteza());
+                return c != 0 ? c : Double.compare(b.getRezistenta(), a.getRezistenta());
+            });
+            return next.toArray(new Duck[0]);
+        }
+    }
+
+    private static final class HeatRange extends RecursiveAction {
+        private final Round round;
+        private final int from;
+        private final int to;
+
+        HeatRange(Round round, int from, int to) {
+            this.round = round;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= HEATS_PER_TASK) {
+                for (int h = from; h < to; h++) round.runHeat(h);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new HeatRange(round, from, mid), new HeatRange(round, mid, to));
+        }
+    }
+}
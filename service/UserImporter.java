@@ -0,0 +1,261 @@
+package service;
+
+import domain.*;
+import errors.RepoError;
+import errors.ValidationError;
+import repo.BulkUserLoader;
+import util.PasswordHasher;
+import validator.ValidationStrategy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Streaming CSV import of users and friendships.
+ *
+ * Input is read in chunks; each chunk is parsed, validated with the same validators as
+ * {@link NetworkService#addUser} and password-hashed in parallel, and handed to a
+ * {@link BulkUserLoader} as one batch. Parsing of the next chunk overlaps with loading of the
+ * current one. Bad rows never stop the import, they are reported with their line number.
+ *
+ * Users file, one row per user (an optional header row starting with "type" is skipped):
+ *   persoana,username,email,password,nume,prenume,ocupatie,yyyy-mm-dd,nivelEmpatie
+ *   duck,username,email,password,FLYING|SWIMMING|FLYING_AND_SWIMMING,viteza,rezistenta
+ * Passwords that already are BCrypt hashes are kept as they are; hashing plain passwords
+ * dominates the cost of an import, so partners should export hashes where they can.
+ *
+ * Friendships file: emailA,emailB (optional header row starting with "email").
+ */
+public class UserImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+    private final BulkUserLoader loader;
+    private final ValidationStrategy<Persoana> persoanaValidator;
+    private final ValidationStrategy<Duck> duckValidator;
+    private final int chunkSize;
+
+    public UserImporter(BulkUserLoader loader, ValidationStrategy<Persoana> persoanaValidator,
+                        ValidationStrategy<Duck> duckValidator, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be > 0");
+        this.loader = Objects.requireNonNull(loader, "loader");
+        this.persoanaValidator = Objects.requireNonNull(persoanaValidator, "persoanaValidator");
+        this.duckValidator = Objects.requireNonNull(duckValidator, "duckValidator");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Outcome of an import: number of rows loaded and every rejected row.
+     */
+    public static final class ImportReport {
+        private long accepted;
+        private final List<Reject> rejects = new ArrayList<>();
+
+        public long getAccepted() { return accepted; }
+
+        public List<Reject> getRejects() { return Collections.unmodifiableList(rejects); }
+
+        @Override
+        public String toString() {
+            return "imported " + accepted + ", rejected " + rejects.size();
+        }
+    }
+
+    /**
+     * A rejected input row.
+     */
+    public record Reject(long line, String reason) {}
+
+    /**
+     * One input line and what became of it: either a parsed value or the reason it was rejected.
+     */
+    private record Parsed<T>(long line, T value, String error) {}
+
+    public ImportReport importUsers(Reader csv) {
+        return run(csv, "type", this::parseUser, loader::loadUsers);
+    }
+
+    public ImportReport importFriendships(Reader csv) {
+        return run(csv, "email", UserImporter::parseFriendship, loader::loadFriendships);
+    }
+
+    private interface LineParser<T> {
+        T parse(List<String> fields);
+    }
+
+    private interface BatchLoader<T> {
+        Map<Integer, String> load(List<T> batch);
+    }
+
+    private <T> ImportReport run(Reader csv, String headerPrefix, LineParser<T> parser, BatchLoader<T> batchLoader) {
+        ImportReport report = new ImportReport();
+        try {
+            BufferedReader in = csv instanceof BufferedReader b ? b : new BufferedReader(csv);
+            long lineNo = 0;
+            List<String> lines = new ArrayList<>(chunkSize);
+            long firstLine = 1;
+            CompletableFuture<List<Parsed<T>>> pending = null;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (lineNo == 1 && line.regionMatches(true, 0, headerPrefix, 0, headerPrefix.length())) {
+                    firstLine = 2;
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    CompletableFuture<List<Parsed<T>>> next = parseAsync(lines, firstLine, parser);
+                    if (pending != null) load(pending.join(), batchLoader, report);
+                    pending = next;
+                    lines = new ArrayList<>(chunkSize);
+                    firstLine = lineNo + 1;
+                }
+            }
+            if (!lines.isEmpty()) {
+                CompletableFuture<List<Parsed<T>>> next = parseAsync(lines, firstLine, parser);
+                if (pending != null) load(pending.join(), batchLoader, report);
+                pending = next;
+            }
+            if (pending != null) load(pending.join(), batchLoader, report);
+        } catch (IOException e) {
+            throw new RepoError("Import read error: " + e.getMessage());
+        }
+        return report;
+    }
+
+    /**
+     * Parse, validate and hash one chunk on the common pool, preserving line order.
+     */
+    private static <T> CompletableFuture<List<Parsed<T>>> parseAsync(List<String> lines, long firstLine, LineParser<T> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Parsed<T>> parsed = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) parsed.add(null);
+            IntStream.range(0, lines.size()).parallel().forEach(i -> {
+                long line = firstLine + i;
+                try {
+                    parsed.set(i, new Parsed<>(line, parser.parse(splitCsv(lines.get(i))), null));
+                } catch (ValidationError | IllegalArgumentException | DateTimeParseException e) {
+                    parsed.set(i, new Parsed<>(line, null, e.getMessage() == null ? e.toString() : e.getMessage().trim()));
+                }
+            });
+            return parsed;
+        });
+    }
+
+    private static <T> void load(List<Parsed<T>> chunk, BatchLoader<T> batchLoader, ImportReport report) {
+        List<T> batch = new ArrayList<>(chunk.size());
+        List<Long> batchLines = new ArrayList<>(chunk.size());
+        for (Parsed<T> p : chunk) {
+            if (p.error() != null) {
+                report.rejects.add(new Reject(p.line(), p.error()));
+            } else {
+                batch.add(p.value());
+                batchLines.add(p.line());
+            }
+        }
+        if (batch.isEmpty()) return;
+        Map<Integer, String> rejected = batchLoader.load(batch);
+        for (Map.Entry<Integer, String> e : rejected.entrySet()) {
+            report.rejects.add(new Reject(batchLines.get(e.getKey()), e.getValue()));
+        }
+        report.accepted += batch.size() - rejected.size();
+    }
+
+    private User parseUser(List<String> f) {
+        if (f.isEmpty()) throw new IllegalArgumentException("Empty row");
+        String type = f.get(0).trim().toLowerCase();
+        User user;
+        if (type.equals("persoana")) {
+            requireFields(f, 9);
+            Persoana p = new Persoana(f.get(1), normalizeEmail(f.get(2)), f.get(3), f.get(4), f.get(5), f.get(6),
+                    LocalDate.parse(f.get(7).trim()), Integer.parseInt(f.get(8).trim()));
+            persoanaValidator.validate(p);
+            user = p;
+        } else if (type.equals("duck")) {
+            requireFields(f, 7);
+            TipRata tip = TipRata.valueOf(f.get(4).trim().toUpperCase());
+            double viteza = Double.parseDouble(f.get(5).trim());
+            double rezistenta = Double.parseDouble(f.get(6).trim());
+            String email = normalizeEmail(f.get(2));
+            Duck d = switch (tip) {
+                case FLYING -> new FlyingDuck(f.get(1), email, f.get(3), viteza, rezistenta);
+                case SWIMMING -> new SwimmingDuck(f.get(1), email, f.get(3), viteza, rezistenta);
+                case FLYING_AND_SWIMMING -> new AmphibiousDuck(f.get(1), email, f.get(3), viteza, rezistenta);
+            };
+            duckValidator.validate(d);
+            user = d;
+        } else {
+            throw new ValidationError("Unknown user type: " + f.get(0));
+        }
+        if (!isBcryptHash(user.getPassword())) {
+            user.setPassword(PasswordHasher.hash(user.getPassword()));
+        }
+        return user;
+    }
+
+    private static String[] parseFriendship(List<String> f) {
+        requireFields(f, 2);
+        String a = f.get(0).trim();
+        String b = f.get(1).trim();
+        if (a.isEmpty() || b.isEmpty()) throw new IllegalArgumentException("Email is empty");
+        return new String[]{normalizeEmail(a), normalizeEmail(b)};
+    }
+
+    /** Emails are stored trimmed and lower-cased, so friendship rows can match them. */
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase();
+    }
+
+    private static void requireFields(List<String> f, int count) {
+        if (f.size() != count) {
+            throw new IllegalArgumentException("Expected " + count + " fields, found " + f.size());
+        }
+    }
+
+    private static boolean isBcryptHash(String password) {
+        return password != null && password.length() == 60
+                && (password.startsWith("$2a$") || password.startsWith("$2b$") || password.startsWith("$2y$"));
+    }
+
+    /**
+     * Split one CSV line; fields may be double-quoted, with "" as an escaped quote.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,37 @@
+package util;
+
+import domain.Duck;
+
+/**
+ * Optimizer result in primitive form: the minimal time and, per lane, the index of the chosen
+ * duck in the speed array that was solved (-1 for a lane without a duck).
+ */
+public class IndexSolveResult {
+    private final double minimalTime;
+    private final int[] laneToDuck;
+
+    public IndexSolveResult(double minimalTime, int[] laneToDuck) {
+        this.minimalTime = minimalTime;
+        this.laneToDuck = laneToDuck;
+    }
+
+    public double getMinimalTime() { return minimalTime; }
+
+    /**
+     * @return per-lane duck index into the solved speed array, -1 if unassigned
+     */
+    public int[] getLaneToDuck() { return laneToDuck; }
+
+    /**
+     * Map the indices back to ducks.
+     *
+     * @param ducks the ducks the solved speeds were taken from, in the same order
+     */
+    public SolveResult toSolveResult(Duck[] ducks) {
+        Duck[] assignments = new Duck[laneToDuck.length];
+        for (int i = 0; i < laneToDuck.length; i++) {
+            if (laneToDuck[i] >= 0) assignments[i] = ducks[laneToDuck[i]];
+        }
+        return new SolveResult(minimalTime, assignments);
+    }
+}
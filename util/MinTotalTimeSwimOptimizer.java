@@ -0,0 +1,34 @@
+package util;
+
+import domain.Duck;
+
+/**
+ * "Minimise total time" race mode: one duck per lane such that the sum of the lane times
+ * (instead of the slowest lane) is smallest. The returned minimal time is that sum.
+ *
+ * A lane's time is 2*distance/speed, a product of a lane term and a duck term, so by the
+ * rearrangement inequality the sum is smallest when the longest lane gets the fastest duck, the
+ * second longest the second fastest, and so on: the same assignment that
+ * {@link SortMatchSwimOptimizer} finds for the slowest lane. Only the reported time differs.
+ */
+public class MinTotalTimeSwimOptimizer implements OptimizationStrategy {
+    private final SortMatchSwimOptimizer matcher = new SortMatchSwimOptimizer();
+
+    /**
+     * @param ducks     candidate ducks; ducks with a non-positive speed are never chosen
+     * @param distances per-lane distances (M entries)
+     * @return the minimal sum of lane times and the duck per lane, or an infinite time and no
+     *         assignment when there are fewer usable ducks than lanes
+     */
+    @Override
+    public SolveResult computeMinTime(Duck[] ducks, double[] distances) {
+        SolveResult slowestLane = matcher.computeMinTime(ducks, distances);
+        Duck[] assignment = slowestLane.getAssignments();
+        if (Double.isInfinite(slowestLane.getMinimalTime())) return slowestLane;
+        double total = 0;
+        for (int i = 0; i < distances.length; i++) {
+            total += 2.0 * distances[i] / assignment[i].getViteza();
+        }
+        return new SolveResult(total, assignment);
+    }
+}
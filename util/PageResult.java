@@ -4,14 +4,31 @@ import java.util.List;
 
 /**
  * Immutable pagination container returned by repository/service calls.
+ * Pages fetched by seek (keyset) pagination also carry a cursor token: the id of the
+ * last item, to be passed back as {@code afterId} when requesting the following page.
  */
 public final class PageResult<T> {
     private final List<T> items;
     private final int pageIndex;
     private final int pageSize;
     private final long totalItems;
+    private final Integer nextCursor;
+    private final boolean keyset;
 
     public PageResult(List<T> items, int pageIndex, int pageSize, long totalItems) {
+        this(items, pageIndex, pageSize, totalItems, null, false);
+    }
+
+    /**
+     * Create a keyset page.
+     *
+     * @param nextCursor id after which the next page starts, or null when this is the last page
+     */
+    public PageResult(List<T> items, int pageIndex, int pageSize, long totalItems, Integer nextCursor) {
+        this(items, pageIndex, pageSize, totalItems, nextCursor, true);
+    }
+
+    private PageResult(List<T> items, int pageIndex, int pageSize, long totalItems, Integer nextCursor, boolean keyset) {
         if (pageIndex < 0) {
             throw new IllegalArgumentException("pageIndex must be non-negative");
         }
@@ -22,6 +39,8 @@ public final class PageResult<T> {
         this.pageIndex = pageIndex;
         this.pageSize = pageSize;
         this.totalItems = Math.max(totalItems, 0);
+        this.nextCursor = nextCursor;
+        this.keyset = keyset;
     }
 
     public List<T> getItems() {
@@ -40,6 +59,13 @@ public final class PageResult<T> {
         return totalItems;
     }
 
+    /**
+     * @return cursor token for the next keyset page, or null if there is none (or the page is offset-based)
+     */
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+
     public int getTotalPages() {
         if (totalItems == 0) {
             return 1;
@@ -48,6 +74,10 @@ public final class PageResult<T> {
     }
 
     public boolean hasNext() {
+        if (keyset) {
+            // totals may be estimates, the cursor is authoritative
+            return nextCursor != null;
+        }
         return pageIndex + 1 < getTotalPages();
     }
 
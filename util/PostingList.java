@@ -0,0 +1,105 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Duplicate-free ascending list of non-negative ints stored compressed: each value is written as
+ * the gap to its predecessor in a variable-length byte encoding (7 bits per byte), so dense id
+ * lists cost one or two bytes per entry. Appending a value larger than the current maximum is
+ * amortized O(1); anything else re-encodes the list. Reading decodes the whole list.
+ * Not thread-safe.
+ */
+public final class PostingList {
+    private byte[] bytes = new byte[8];
+    private int length;
+    private int size;
+    private int last = -1;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if the value was inserted, false if it was already present
+     */
+    public boolean add(int value) {
+        if (value < 0) throw new IllegalArgumentException("negative value: " + value);
+        if (value > last) {
+            writeVarInt(value - last);
+            last = value;
+            size++;
+            return true;
+        }
+        int[] values = toArray();
+        int pos = Arrays.binarySearch(values, value);
+        if (pos >= 0) return false;
+        pos = -pos - 1;
+        int[] grown = new int[values.length + 1];
+        System.arraycopy(values, 0, grown, 0, pos);
+        grown[pos] = value;
+        System.arraycopy(values, pos, grown, pos + 1, values.length - pos);
+        rebuild(grown);
+        return true;
+    }
+
+    /**
+     * @return true if the value was present
+     */
+    public boolean remove(int value) {
+        int[] values = toArray();
+        int pos = Arrays.binarySearch(values, value);
+        if (pos < 0) return false;
+        int[] shrunk = new int[values.length - 1];
+        System.arraycopy(values, 0, shrunk, 0, pos);
+        System.arraycopy(values, pos + 1, shrunk, pos, values.length - pos - 1);
+        rebuild(shrunk);
+        return true;
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int prev = -1;
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[p++];
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += gap;
+            values[i] = prev;
+        }
+        return values;
+    }
+
+    /** @return encoded size in bytes */
+    public int byteSize() {
+        return length;
+    }
+
+    private void rebuild(int[] values) {
+        length = 0;
+        size = 0;
+        last = -1;
+        for (int v : values) add(v);
+    }
+
+    private void writeVarInt(int v) {
+        if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        while ((v & ~0x7f) != 0) {
+            bytes[length++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        bytes[length++] = (byte) v;
+    }
+}
@@ -0,0 +1,129 @@
+package util;
+
+import domain.Duck;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free variant of {@link BinarySearchSwimOptimizer} running the same bisection and
+ * greedy check.
+ *
+ * Speeds are read from the ducks once into a {@code double[]} and turned into reciprocals, so a
+ * lane time in the feasibility loop is one multiplication instead of a virtual call and a
+ * division. All scratch arrays (speeds, reciprocals, used marks, current and best assignment)
+ * are kept between iterations and calls and only grow; "used" is tracked with an iteration
+ * stamp so it never has to be cleared. Ducks are only looked up again when the final
+ * {@link IndexSolveResult} is mapped back. Multiplying by a reciprocal can round differently
+ * from the division in the original, so times may differ in the last bit.
+ *
+ * Instances hold scratch state and are not thread-safe; use one per thread.
+ */
+public class PrimitiveSwimOptimizer implements OptimizationStrategy {
+    private static final int MAX_ITERATIONS = 100;
+
+    private double[] speeds = new double[0];
+    private double[] inverseSpeeds = new double[0];
+    private int[] usedStamp = new int[0];
+    private int stamp;
+    private int[] current = new int[0];
+    private int[] best = new int[0];
+
+    @Override
+    public SolveResult computeMinTime(Duck[] ducks, double[] distances) {
+        int n = ducks.length;
+        if (speeds.length < n) speeds = new double[n];
+        for (int j = 0; j < n; j++) speeds[j] = ducks[j].getViteza();
+        return solve(speeds, n, distances).toSolveResult(ducks);
+    }
+
+    /**
+     * Solve on raw speeds.
+     *
+     * @param speeds    duck speeds; only the first n entries are used
+     * @param n         number of ducks
+     * @param distances per-lane distances (M entries)
+     * @return minimal time and per-lane indices into speeds
+     */
+    public IndexSolveResult solve(double[] speeds, int n, double[] distances) {
+        int m = distances.length;
+        ensureCapacity(n, m);
+        double minSpeed = Double.MAX_VALUE;
+        double maxDist = 0.0;
+        for (int j = 0; j < n; j++) {
+            minSpeed = Math.min(minSpeed, speeds[j]);
+            inverseSpeeds[j] = 1.0 / speeds[j];
+        }
+        for (double d : distances) maxDist = Math.max(maxDist, d);
+        int[] result = new int[m];
+        Arrays.fill(result, -1);
+        if (n == 0 || minSpeed <= 0) {
+            return new IndexSolveResult(Double.POSITIVE_INFINITY, result);
+        }
+
+        double low = 0;
+        double high = (2.0 * maxDist) / minSpeed;
+        double minTime = high;
+        boolean found = false;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double mid = (low + high) / 2.0;
+            if (feasible(mid, n, distances)) {
+                minTime = mid;
+                high = mid;
+                int[] swap = best;
+                best = current;
+                current = swap;
+                found = true;
+            } else {
+                low = mid;
+            }
+        }
+        if (found) System.arraycopy(best, 0, result, 0, m);
+        return new IndexSolveResult(minTime, result);
+    }
+
+    /**
+     * Same greedy as {@link BinarySearchSwimOptimizer}: each lane in order takes the unused duck
+     * with the smallest time within the bound. Fills {@code current} when feasible.
+     */
+    private boolean feasible(double time, int n, double[] distances) {
+        int m = distances.length;
+        if (n < m) return false;
+        int mark = nextStamp();
+        for (int i = 0; i < m; i++) {
+            double twice = 2.0 * distances[i];
+            int chosen = -1;
+            double bestTime = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                double t = twice * inverseSpeeds[j];
+                if (usedStamp[j] != mark & t <= time & t < bestTime) {
+                    bestTime = t;
+                    chosen = j;
+                }
+            }
+            if (chosen < 0) return false;
+            usedStamp[chosen] = mark;
+            current[i] = chosen;
+        }
+        return true;
+    }
+
+    private int nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(usedStamp, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    private void ensureCapacity(int n, int m) {
+        if (inverseSpeeds.length < n) {
+            inverseSpeeds = new double[n];
+            usedStamp = new int[n];
+            stamp = 0;
+        }
+        if (current.length < m) {
+            current = new int[m];
+            best = new int[m];
+        }
+    }
+}
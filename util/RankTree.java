@@ -0,0 +1,178 @@
+package util;
+
+/**
+ * Order-statistic tree over (key, id) pairs, ascending by key and then id.
+ *
+ * A treap whose nodes also count their subtree size, so besides insert and delete in expected
+ * O(log n) it answers "how many entries come before this one" ({@link #rank}) and "which entry
+ * is at position k" ({@link #idAt}) in expected O(log n) as well. Each (key, id) pair is stored
+ * at most once. Not thread-safe.
+ */
+public final class RankTree {
+    private static final class Node {
+        final double key;
+        final int id;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(double key, int id, int priority) {
+            this.key = key;
+            this.id = id;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+    private int seed = 0x2545F491;
+
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * @return true if the pair was inserted, false if it was already present
+     */
+    public boolean add(double key, int id) {
+        if (contains(key, id)) return false;
+        root = insert(root, new Node(key, id, nextPriority()));
+        return true;
+    }
+
+    /**
+     * @return true if the pair was present
+     */
+    public boolean remove(double key, int id) {
+        if (!contains(key, id)) return false;
+        root = delete(root, key, id);
+        return true;
+    }
+
+    public boolean contains(double key, int id) {
+        Node n = root;
+        while (n != null) {
+            int c = compare(key, id, n);
+            if (c == 0) return true;
+            n = c < 0 ? n.left : n.right;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of entries ordered before (key, id); the pair itself need not be present
+     */
+    public int rank(double key, int id) {
+        int before = 0;
+        Node n = root;
+        while (n != null) {
+            int c = compare(key, id, n);
+            if (c <= 0) {
+                if (c == 0) return before + size(n.left);
+                n = n.left;
+            } else {
+                before += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return before;
+    }
+
+    /**
+     * @param index position in ascending order, starting at 0
+     * @return the id stored at that position
+     */
+    public int idAt(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+        Node n = root;
+        while (true) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index == leftSize) {
+                return n.id;
+            } else {
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    private Node insert(Node n, Node item) {
+        if (n == null) return item;
+        if (compare(item.key, item.id, n) < 0) {
+            n.left = insert(n.left, item);
+            if (n.left.priority > n.priority) n = rotateRight(n);
+        } else {
+            n.right = insert(n.right, item);
+            if (n.right.priority > n.priority) n = rotateLeft(n);
+        }
+        update(n);
+        return n;
+    }
+
+    private Node delete(Node n, double key, int id) {
+        int c = compare(key, id, n);
+        if (c < 0) {
+            n.left = delete(n.left, key, id);
+        } else if (c > 0) {
+            n.right = delete(n.right, key, id);
+        } else {
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+            // rotate the higher-priority child up and keep sinking the node until it is a leaf
+            if (n.left.priority > n.right.priority) {
+                n = rotateRight(n);
+                n.right = delete(n.right, key, id);
+            } else {
+                n = rotateLeft(n);
+                n.left = delete(n.left, key, id);
+            }
+        }
+        update(n);
+        return n;
+    }
+
+    private static Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static void update(Node n) {
+        n.size = 1 + size(n.left) + size(n.right);
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static int compare(double key, int id, Node n) {
+        int c = Double.compare(key, n.key);
+        return c != 0 ? c : Integer.compare(id, n.id);
+    }
+
+    private int nextPriority() {
+        // xorshift: cheap, and deterministic so the tree shape is reproducible
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
@@ -0,0 +1,67 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-capacity circular buffer that overwrites its oldest element when full. Not thread-safe.
+ */
+public final class RingBuffer<T> {
+    private final Object[] items;
+    private int head; // index of the next write
+    private int size;
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.items = new Object[capacity];
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Append an element, evicting the oldest one if the buffer is full.
+     */
+    public void add(T item) {
+        items[head] = item;
+        head = (head + 1) % items.length;
+        if (size < items.length) size++;
+    }
+
+    /**
+     * @return the most recently added element, or null if empty
+     */
+    @SuppressWarnings("unchecked")
+    public T newest() {
+        return size == 0 ? null : (T) items[(head - 1 + items.length) % items.length];
+    }
+
+    /**
+     * @return up to n elements, newest first
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> newest(int n) {
+        int count = Math.min(n, size);
+        List<T> result = new ArrayList<>(count);
+        for (int k = 1; k <= count; k++) {
+            result.add((T) items[(head - k + items.length) % items.length]);
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,49 @@
+package util;
+
+import domain.Duck;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Exact optimization strategy for the one-duck-per-lane race.
+ *
+ * A lane's time is 2*distance/speed, so for any set of ducks the largest lane time is smallest
+ * when the longest lane gets the fastest duck, the second longest the second fastest, and so on
+ * (swapping any inverted pair never increases the maximum). The best set is the M fastest ducks.
+ * Sorting lanes by distance and ducks by speed and matching them therefore gives the exact
+ * minimal time in O(N log N + M log M), without the approximation of
+ * {@link BinarySearchSwimOptimizer}.
+ */
+public class SortMatchSwimOptimizer implements OptimizationStrategy {
+
+    /**
+     * @param ducks     candidate ducks; ducks with a non-positive speed are never chosen
+     * @param distances per-lane distances (M entries)
+     * @return the exact minimal time and the duck per lane, or an infinite time and no
+     *         assignment when there are fewer usable ducks than lanes
+     */
+    @Override
+    public SolveResult computeMinTime(Duck[] ducks, double[] distances) {
+        int m = distances.length;
+        Duck[] assignment = new Duck[m];
+        Duck[] usable = Arrays.stream(ducks).filter(d -> d.getViteza() > 0).toArray(Duck[]::new);
+        if (m == 0 || usable.length < m) {
+            return new SolveResult(Double.POSITIVE_INFINITY, assignment);
+        }
+        // fastest first; only the first m take part
+        Arrays.sort(usable, Comparator.comparingDouble(Duck::getViteza).reversed());
+        Integer[] lanes = new Integer[m];
+        for (int i = 0; i < m; i++) lanes[i] = i;
+        // longest lane first
+        Arrays.sort(lanes, (a, b) -> Double.compare(distances[b], distances[a]));
+
+        double minTime = 0;
+        for (int k = 0; k < m; k++) {
+            int lane = lanes[k];
+            assignment[lane] = usable[k];
+            minTime = Math.max(minTime, 2.0 * distances[lane] / usable[k].getViteza());
+        }
+        return new SolveResult(minTime, assignment);
+    }
+}
@@ -0,0 +1,90 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Growable, duplicate-free, ascending array of primitive ints. Appending a value larger than
+ * the current maximum (the common case for generated ids) is amortized O(1); positional access
+ * is O(1), which gives O(page size) offset paging, and seeks are a binary search. Not thread-safe.
+ */
+public final class SortedIntList {
+    private int[] data;
+    private int size;
+
+    public SortedIntList() {
+        this.data = new int[8];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return data[index];
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(data, 0, size, value) >= 0;
+    }
+
+    /**
+     * @return true if the value was inserted, false if it was already present
+     */
+    public boolean add(int value) {
+        if (size > 0 && value > data[size - 1]) {
+            ensureCapacity();
+            data[size++] = value;
+            return true;
+        }
+        int pos = Arrays.binarySearch(data, 0, size, value);
+        if (pos >= 0) return false;
+        pos = -pos - 1;
+        ensureCapacity();
+        System.arraycopy(data, pos, data, pos + 1, size - pos);
+        data[pos] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return true if the value was present
+     */
+    public boolean remove(int value) {
+        int pos = Arrays.binarySearch(data, 0, size, value);
+        if (pos < 0) return false;
+        System.arraycopy(data, pos + 1, data, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * @return index of the first element strictly greater than value (size if none)
+     */
+    public int indexAfter(int value) {
+        int pos = Arrays.binarySearch(data, 0, size, value);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * @return index of the first element greater than or equal to value (size if none)
+     */
+    public int indexFrom(int value) {
+        int pos = Arrays.binarySearch(data, 0, size, value);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void ensureCapacity() {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache using the W-TinyLFU policy: new entries land in a small LRU window,
+ * and an entry leaving the window is only admitted to the main segmented LRU (probation +
+ * protected) if a count-min frequency sketch says it is used more often than the entry it
+ * would evict. This keeps one-off scans from flushing frequently used entries.
+ * All operations are synchronized; keep values cheap to produce outside the lock.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TinyLfuCache<K, V> {
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity maximum number of entries held (must be positive)
+     */
+    public TinyLfuCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.windowMax = Math.max(1, capacity / 100);
+        this.mainMax = Math.max(1, capacity - windowMax);
+        this.protectedMax = Math.max(1, mainMax * 80 / 100);
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Look up a value and record the access.
+     *
+     * @return the cached value or null on a miss
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value == null) {
+            value = protectedSegment.get(key);
+        }
+        if (value == null) {
+            value = probation.remove(key);
+            if (value != null) {
+                promote(key, value);
+            }
+        }
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Look up a value without counting it as an access: hit/miss statistics and the frequency
+     * sketch are left untouched, so bulk internal lookups do not skew admission.
+     *
+     * @return the cached value or null if absent
+     */
+    public synchronized V peek(K key) {
+        if (window.containsKey(key)) return window.get(key);
+        if (protectedSegment.containsKey(key)) return protectedSegment.get(key);
+        if (probation.containsKey(key)) return probation.get(key);
+        return null;
+    }
+
+    /**
+     * Insert or replace a value. New keys go through the window and may be rejected by admission.
+     */
+    public synchronized void put(K key, V value) {
+        if (key == null || value == null) return;
+        if (window.containsKey(key)) { window.put(key, value); return; }
+        if (protectedSegment.containsKey(key)) { protectedSegment.put(key, value); return; }
+        if (probation.containsKey(key)) { probation.put(key, value); return; }
+        sketch.increment(key);
+        window.put(key, value);
+        if (window.size() > windowMax) {
+            Map.Entry<K, V> candidate = removeEldest(window);
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    /**
+     * Remove a key from every segment (frequency history is kept).
+     */
+    public synchronized V invalidate(K key) {
+        V v = window.remove(key);
+        if (v == null) v = probation.remove(key);
+        if (v == null) v = protectedSegment.remove(key);
+        return v;
+    }
+
+    public synchronized void invalidateAll() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public synchronized long getHitCount() { return hits; }
+
+    public synchronized long getMissCount() { return misses; }
+
+    public synchronized long getEvictionCount() { return evictions; }
+
+    /**
+     * @return hits / (hits + misses), or 0 when nothing was requested yet
+     */
+    public synchronized double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private void promote(K key, V value) {
+        protectedSegment.put(key, value);
+        if (protectedSegment.size() > protectedMax) {
+            Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    private void admit(K key, V value) {
+        if (probation.size() + protectedSegment.size() < mainMax) {
+            probation.put(key, value);
+            return;
+        }
+        LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victim = victimSegment.keySet().iterator().next();
+        evictions++;
+        if (sketch.frequency(key) > sketch.frequency(victim)) {
+            victimSegment.remove(victim);
+            probation.put(key, value);
+        }
+        // otherwise the candidate itself is the one evicted
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        Map.Entry<K, V> eldest = it.next();
+        Map.Entry<K, V> copy = Map.entry(eldest.getKey(), eldest.getValue());
+        it.remove();
+        return copy;
+    }
+
+    /**
+     * Count-min sketch with four rows of 4-bit saturating counters (stored one per byte).
+     * Counters are halved once the number of increments reaches ten times the cache size,
+     * so old popularity fades out.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x97cb3127, 0x2e5bf271, 0x7b2f2a3d, 0x5c4f8a1b};
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            this.table = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        void increment(Object key) {
+            int h = spread(key.hashCode());
+            for (int row = 0; row < DEPTH; row++) {
+                int idx = row * (mask + 1) + index(h, row);
+                if (table[idx] < 15) table[idx]++;
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) table[i] >>= 1;
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int h = spread(key.hashCode());
+            int min = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, table[row * (mask + 1) + index(h, row)]);
+            }
+            return min;
+        }
+
+        private int index(int h, int row) {
+            int x = h * SEEDS[row];
+            return (x ^ (x >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            return h;
+        }
+    }
+}
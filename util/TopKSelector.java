@@ -0,0 +1,79 @@
+package util;
+
+/**
+ * Top-k selection over primitive (primary, secondary) keys without sorting the whole input.
+ *
+ * A bounded heap holds the k best indices seen so far with the worst of them at the root, so
+ * each further candidate costs one comparison against the root and, if it gets in, a sift of
+ * O(log k). Selecting k of n is O(n log k) time and O(k) extra space; only the k winners are
+ * sorted at the end.
+ */
+public final class TopKSelector {
+    private TopKSelector() {
+    }
+
+    /**
+     * Indices of the k entries with the largest primary key, ties broken by the larger secondary
+     * key and then by the lower index (the order a stable descending sort would give).
+     *
+     * @param primary   primary keys; only the first n entries are used
+     * @param secondary secondary keys; only the first n entries are used
+     * @param n         number of candidates
+     * @param k         number of entries wanted
+     * @return min(k, n) indices, best first
+     */
+    public static int[] select(double[] primary, double[] secondary, int n, int k) {
+        if (k < 0) throw new IllegalArgumentException("k must be >= 0");
+        int size = Math.min(k, n);
+        int[] heap = new int[size];
+        for (int i = 0; i < size; i++) {
+            heap[i] = i;
+            siftUp(heap, i, primary, secondary);
+        }
+        for (int i = size; i < n && size > 0; i++) {
+            if (better(i, heap[0], primary, secondary)) {
+                heap[0] = i;
+                siftDown(heap, 0, size, primary, secondary);
+            }
+        }
+        // pop the worst to the back until the heap is empty: heap sort, best first
+        for (int end = size - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, 0, end, primary, secondary);
+        }
+        return heap;
+    }
+
+    private static boolean better(int a, int b, double[] primary, double[] secondary) {
+        if (primary[a] != primary[b]) return primary[a] > primary[b];
+        if (secondary[a] != secondary[b]) return secondary[a] > secondary[b];
+        return a < b;
+    }
+
+    private static void siftUp(int[] heap, int pos, double[] primary, double[] secondary) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!better(heap[parent], item, primary, secondary)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private static void siftDown(int[] heap, int pos, int size, double[] primary, double[] secondary) {
+        int item = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && better(heap[child], heap[right], primary, secondary)) child = right;
+            if (!better(item, heap[child], primary, secondary)) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+}